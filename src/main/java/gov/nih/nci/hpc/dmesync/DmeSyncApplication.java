@@ -4,11 +4,16 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import javax.jms.ConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.policy.PolicyEntry;
+import org.apache.activemq.broker.region.policy.PolicyMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.boot.autoconfigure.jms.DefaultJmsListenerContainerFactoryConfigurer;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.ConfigurableApplicationContext;
@@ -22,6 +27,7 @@ import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.util.ErrorHandler;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import gov.nih.nci.hpc.dmesync.jms.DmeSyncProducer;
 import gov.nih.nci.hpc.dmesync.scheduler.DmeSyncScheduler;
 
 @SpringBootApplication
@@ -90,6 +96,30 @@ public class DmeSyncApplication {
     return converter;
   }
 
+  /**
+   * Starts the embedded broker before the vm:// connection factory would, so its queues deliver
+   * the messages by their JMS priority when a priority policy is set.
+   */
+  @Bean(destroyMethod = "stop")
+  @ConditionalOnExpression(
+      "'${dmesync.jms.priority.policy:none}' != 'none' and '${spring.activemq.broker-url:}'.startsWith('vm://')")
+  public BrokerService embeddedBroker(@Value("${spring.activemq.broker-url}") String brokerUrl)
+      throws Exception {
+    BrokerService broker = new BrokerService();
+    broker.setBrokerName(DmeSyncProducer.getEmbeddedBrokerName(brokerUrl));
+    broker.setPersistent(false);
+    broker.setUseJmx(false);
+    broker.setUseShutdownHook(false);
+    PolicyEntry entry = new PolicyEntry();
+    entry.setQueue(">");
+    entry.setPrioritizedMessages(true);
+    PolicyMap policyMap = new PolicyMap();
+    policyMap.setDefaultEntry(entry);
+    broker.setDestinationPolicy(policyMap);
+    broker.start();
+    return broker;
+  }
+
   @Bean
   public DefaultJmsListenerContainerFactory jmsListenerContainerFactory(
       ConnectionFactory connectionFactory,
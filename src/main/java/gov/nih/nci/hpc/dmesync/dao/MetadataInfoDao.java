@@ -3,6 +3,7 @@ package gov.nih.nci.hpc.dmesync.dao;
 import gov.nih.nci.hpc.dmesync.domain.MetadataInfo;
 import java.util.List;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 
 public interface MetadataInfoDao<T extends MetadataInfo> extends JpaRepository<T, Long> {
@@ -13,6 +14,14 @@ public interface MetadataInfoDao<T extends MetadataInfo> extends JpaRepository<T
    */
   void deleteByObjectId(Long objectId);
 
+  /**
+   * deleteByObjectIds, with one delete
+   * @param objectIds the ids
+   */
+  @Modifying
+  @Query("delete from MetadataInfo m where m.objectId in ?1")
+  void deleteByObjectIds(List<Long> objectIds);
+
   /**
    * findAllByRunIdAndDoc
    * @param runId the runId
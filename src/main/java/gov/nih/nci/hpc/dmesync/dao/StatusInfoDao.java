@@ -1,10 +1,15 @@
 package gov.nih.nci.hpc.dmesync.dao;
 
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
 import gov.nih.nci.hpc.dmesync.domain.StatusInfo;
 import java.util.List;
+import java.util.stream.Stream;
+import javax.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
 public interface StatusInfoDao<T extends StatusInfo> extends JpaRepository<T, Long> {
 
@@ -212,6 +217,17 @@ public interface StatusInfoDao<T extends StatusInfo> extends JpaRepository<T, Lo
   @Query("delete from StatusInfo s where s.id in ?1")
   void deleteStatusInfoByIds(List<Long> ids);
 
+  /**
+   * Resets the rows for a reattempt in the run, with one update
+   * @param ids the StatusInfo ids
+   * @param runId the run id
+   * @return the number of rows updated
+   */
+  @Modifying
+  @Query("update StatusInfo s set s.runId = ?2, s.error = '', s.status = null, s.endWorkflow = false,"
+      + " s.retryCount = 0, s.reattempts = coalesce(s.reattempts, 0) + 1 where s.id in ?1")
+  int resetForReattemptByIds(List<Long> ids, String runId);
+
   /**
    * findFirstStatusInfoByOriginalFilePathOrderByStartTimestampDesc
    * @param originalFilePath the original file path
@@ -220,6 +236,26 @@ public interface StatusInfoDao<T extends StatusInfo> extends JpaRepository<T, Lo
    */
   @Query("select s from StatusInfo s where s.originalFilePath=?1 and s.sourceFilePath like concat('%', ?2) order by s.uploadStartTimestamp desc ")
   List<StatusInfo> findByOriginalFilePathAndSourceFilePathEndingWith(String originalFilePath, String sourceFilePath);
+
+  /**
+   * streamStatusByOriginalFilePathStartsWith
+   * @param baseDir the base directory
+   * @return the original file path, id, status, start timestamp and upload start timestamp of
+   *     each row under the base directory. The stream has to be closed.
+   */
+  @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "5000"))
+  @Query("select s.originalFilePath, s.id, s.status, s.startTimestamp, s.uploadStartTimestamp from StatusInfo s where s.originalFilePath like concat(?1, '%')")
+  Stream<Object[]> streamStatusByOriginalFilePathStartsWith(String baseDir);
+
+  /**
+   * streamCompletedPathsByDoc
+   * @param doc the doc
+   * @return the original and source file path of each COMPLETED row of the doc. The stream has to
+   *     be closed.
+   */
+  @QueryHints(@QueryHint(name = HINT_FETCH_SIZE, value = "5000"))
+  @Query("select s.originalFilePath, s.sourceFilePath from StatusInfo s where s.doc = ?1 and s.status = 'COMPLETED'")
+  Stream<Object[]> streamCompletedPathsByDoc(String doc);
   
   
 
@@ -1,5 +1,7 @@
 package gov.nih.nci.hpc.dmesync.dao;
 
+import java.util.List;
+
 import gov.nih.nci.hpc.dmesync.domain.TaskInfo;
 import org.springframework.data.jpa.repository.JpaRepository;
 
@@ -7,6 +9,8 @@ public interface TaskInfoDao<T extends TaskInfo> extends JpaRepository<T, Long>
 
   TaskInfo findFirstByObjectIdAndTaskName(Long id, String taskName);
 
+  List<TaskInfo> findByObjectIdOrderByIdAsc(Long objectId);
+
   void deleteByObjectId(Long objectId);
 
 }
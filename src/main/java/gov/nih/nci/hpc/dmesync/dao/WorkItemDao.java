@@ -0,0 +1,77 @@
+package gov.nih.nci.hpc.dmesync.dao;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+
+import gov.nih.nci.hpc.dmesync.domain.WorkItem;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.stream.Stream;
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+
+public interface WorkItemDao<T extends WorkItem> extends JpaRepository<T, Long> {
+
+  /**
+   * streamClaimable, locking the rows as they are read and skipping the rows locked by another
+   * node, highest priority first
+   * @param doc the doc
+   * @param now the current time, a lease expired before it is claimable again
+   * @return the work items not claimed or whose lease has expired. The stream has to be closed
+   *     within the transaction that claims them.
+   */
+  // A lock timeout of -2 is rendered by Hibernate as for update skip locked.
+  @Lock(LockModeType.PESSIMISTIC_WRITE)
+  @QueryHints({
+    @QueryHint(name = "javax.persistence.lock.timeout", value = "-2"),
+    @QueryHint(name = HINT_FETCH_SIZE, value = "10")
+  })
+  @Query("select w from WorkItem w where w.doc = ?1 and (w.leaseExpiration is null or w.leaseExpiration < ?2)"
+      + " order by w.priority desc, w.objectId")
+  Stream<WorkItem> streamClaimable(String doc, Timestamp now);
+
+  /**
+   * renewLeases
+   * @param claimedBy the server id
+   * @param leaseExpiration the new lease expiration
+   * @return the number of leases renewed
+   */
+  @Modifying
+  @Query("update WorkItem w set w.leaseExpiration = ?2 where w.claimedBy = ?1")
+  int renewLeases(String claimedBy, Timestamp leaseExpiration);
+
+  /**
+   * releaseLeases, so the work items are claimable again
+   * @param claimedBy the server id
+   * @return the number of leases released
+   */
+  @Modifying
+  @Query("update WorkItem w set w.claimedBy = null, w.leaseExpiration = null where w.claimedBy = ?1")
+  int releaseLeases(String claimedBy);
+
+  /**
+   * deleteWorkItemByObjectId, without failing if there is none
+   * @param objectId the StatusInfo id
+   */
+  @Modifying
+  @Query("delete from WorkItem w where w.objectId = ?1")
+  void deleteWorkItemByObjectId(Long objectId);
+
+  /**
+   * findAllByDoc
+   * @param doc the doc
+   * @return the work items of the doc
+   */
+  List<WorkItem> findAllByDocOrderByPriorityDescObjectIdAsc(String doc);
+
+  /**
+   * countByDoc
+   * @param doc the doc
+   * @return the number of work items of the doc
+   */
+  long countByDoc(String doc);
+}
@@ -12,7 +12,7 @@ public class MetadataInfo {
   @Id
   @Column(name = "ID", nullable = false, precision = 0)
   @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "METADATA_INFO_SEQ")
-  @SequenceGenerator(name = "METADATA_INFO_SEQ", sequenceName = "METADATA_INFO_SEQ", allocationSize = 1)
+  @SequenceGenerator(name = "METADATA_INFO_SEQ", sequenceName = "METADATA_INFO_SEQ", allocationSize = 50)
   public Long getId() {
     return id;
   }
@@ -35,11 +35,13 @@ public class StatusInfo {
   private Boolean endWorkflow;
   private HpcDataObjectRegistrationRequestDTO dataObjectRegistrationRequestDTO;
   private HpcArchivePermissionsRequestDTO archivePermissionsRequestDTO;
+  private Boolean directory; //set by the scan, null if not known
+  private Long contentSize; //in bytes, of the files the scan found under a directory
 
   @Id
   @Column(name = "ID", nullable = false, precision = 0)
   @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "STATUS_INFO_SEQ")
-  @SequenceGenerator(name = "STATUS_INFO_SEQ", sequenceName = "STATUS_INFO_SEQ", allocationSize = 1)
+  @SequenceGenerator(name = "STATUS_INFO_SEQ", sequenceName = "STATUS_INFO_SEQ", allocationSize = 50)
   public Long getId() {
     return id;
   }
@@ -261,6 +263,26 @@ public class StatusInfo {
 	this.archivePermissionsRequestDTO = archivePermissionsRequestDTO;
   }
 
+  @Transient
+  public Boolean getDirectory() {
+	return directory;
+  }
+
+  @Transient
+  public void setDirectory(Boolean directory) {
+	this.directory = directory;
+  }
+
+  @Transient
+  public Long getContentSize() {
+	return contentSize;
+  }
+
+  @Transient
+  public void setContentSize(Long contentSize) {
+	this.contentSize = contentSize;
+  }
+
 @Override
 public String toString() {
 	return "StatusInfo [id=" + id + ", doc=" + doc + ", runId=" + runId + ", orginalFileName=" + orginalFileName
@@ -12,7 +12,7 @@ public class TaskInfo {
   @Id
   @Column(name = "ID", nullable = false, precision = 0)
   @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "TASK_INFO_SEQ")
-  @SequenceGenerator(name = "TASK_INFO_SEQ", sequenceName = "TASK_INFO_SEQ", allocationSize = 1)
+  @SequenceGenerator(name = "TASK_INFO_SEQ", sequenceName = "TASK_INFO_SEQ", allocationSize = 50)
   public Long getId() {
     return id;
   }
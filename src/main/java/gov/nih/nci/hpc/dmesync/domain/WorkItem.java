@@ -0,0 +1,111 @@
+package gov.nih.nci.hpc.dmesync.domain;
+
+import javax.persistence.*;
+import java.sql.Timestamp;
+
+import org.springframework.data.domain.Persistable;
+
+/**
+ * An object waiting to be processed, or being processed, by one of the nodes of a cluster. A node
+ * claims it by setting its server id and a lease expiration, renews the lease while it holds the
+ * object and deletes the row once the workflow of the object has ended.
+ *
+ * <p>The id is the object's, so a work item tells Spring Data whether it is new rather than being
+ * looked up before it is saved.
+ */
+@Entity
+@Table(name = "WORK_ITEM")
+public class WorkItem implements Persistable<Long> {
+
+	@Id
+	@Column(name = "OBJECT_ID", nullable = false, precision = 0)
+	private Long objectId;
+
+	@Column(name = "DOC", nullable = false)
+	private String doc;
+
+	@Column(name = "PRIORITY")
+	private Integer priority;
+
+	@Column(name = "CLAIMED_BY")
+	private String claimedBy;
+
+	@Column(name = "LEASE_EXPIRATION")
+	private Timestamp leaseExpiration;
+
+	@Column(name = "CREATED")
+	private Timestamp created;
+
+	@Transient
+	private boolean isNew = true;
+
+	@Override
+	public Long getId() {
+		return objectId;
+	}
+
+	@Override
+	public boolean isNew() {
+		return isNew;
+	}
+
+	@PostLoad
+	@PostPersist
+	void markNotNew() {
+		isNew = false;
+	}
+
+	public Long getObjectId() {
+		return objectId;
+	}
+
+	public void setObjectId(Long objectId) {
+		this.objectId = objectId;
+	}
+
+	public String getDoc() {
+		return doc;
+	}
+
+	public void setDoc(String doc) {
+		this.doc = doc;
+	}
+
+	public Integer getPriority() {
+		return priority;
+	}
+
+	public void setPriority(Integer priority) {
+		this.priority = priority;
+	}
+
+	public String getClaimedBy() {
+		return claimedBy;
+	}
+
+	public void setClaimedBy(String claimedBy) {
+		this.claimedBy = claimedBy;
+	}
+
+	public Timestamp getLeaseExpiration() {
+		return leaseExpiration;
+	}
+
+	public void setLeaseExpiration(Timestamp leaseExpiration) {
+		this.leaseExpiration = leaseExpiration;
+	}
+
+	public Timestamp getCreated() {
+		return created;
+	}
+
+	public void setCreated(Timestamp created) {
+		this.created = created;
+	}
+
+	@Override
+	public String toString() {
+		return "WorkItem [objectId=" + objectId + ", doc=" + doc + ", priority=" + priority + ", claimedBy="
+				+ claimedBy + ", leaseExpiration=" + leaseExpiration + "]";
+	}
+}
@@ -2,10 +2,16 @@ package gov.nih.nci.hpc.dmesync.dto;
 
 import java.io.Serializable;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 public class DmeSyncMessageDto implements Serializable {
 
   private Long objectId;
 
+  // Sent as the JMS priority of the message, not in its body.
+  @JsonIgnore
+  private transient Integer priority;
+
   public DmeSyncMessageDto() {}
 
   public DmeSyncMessageDto(Long objectId) {
@@ -20,6 +26,16 @@ public class DmeSyncMessageDto implements Serializable {
     this.objectId = objectId;
   }
 
+  @JsonIgnore
+  public Integer getPriority() {
+    return priority;
+  }
+
+  @JsonIgnore
+  public void setPriority(Integer priority) {
+    this.priority = priority;
+  }
+
   @Override
   public String toString() {
     return "SyncMessage [objectId=" + objectId.toString() + "]";
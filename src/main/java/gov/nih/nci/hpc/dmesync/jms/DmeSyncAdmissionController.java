@@ -0,0 +1,150 @@
+package gov.nih.nci.hpc.dmesync.jms;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * DME Sync admission of the scheduler's requests to the inbound queue.
+ *
+ * <p>Caps the number of objects in flight, queued or being processed, and the bytes the objects
+ * have staged in the work directory. The scheduler waits for room before sending more requests;
+ * an object frees its slot when its workflow ends for good, not when its message is to be
+ * redelivered, and its bytes when the cleanup removes its files. Requests sent by the workflow
+ * tasks themselves are not held back, so a consumer never waits on the scheduler, but the bytes
+ * they stage are counted.
+ */
+@Component
+public class DmeSyncAdmissionController {
+
+  private static final Logger log = LoggerFactory.getLogger(DmeSyncAdmissionController.class);
+
+  @Value("${dmesync.admission.max.objects:0}")
+  private int maxObjects;
+
+  @Value("${dmesync.admission.max.staged.bytes:0}")
+  private long maxStagedBytes;
+
+  @Value("${dmesync.admission.recheck.millis:60000}")
+  private long recheckMillis;
+
+  @Autowired private DmeSyncProducer sender;
+
+  private final Set<Long> inFlight = new HashSet<>();
+  private final Map<Long, Long> staged = new HashMap<>();
+  private long stagedBytes;
+
+  /**
+   * Admits the object if there is room for it.
+   *
+   * @param objectId the StatusInfo id
+   * @return true if the object was admitted or already is in flight
+   */
+  public synchronized boolean tryAdmit(Long objectId) {
+    if (inFlight.contains(objectId)) return true;
+    if (isFull()) return false;
+    inFlight.add(objectId);
+    return true;
+  }
+
+  /**
+   * Waits until there is room for the object and admits it. An interrupted wait admits the object
+   * anyway so the run does not lose it. While waiting, the broker is checked every recheck interval
+   * for slots that no workflow is going to free.
+   *
+   * @param objectId the StatusInfo id
+   */
+  public synchronized void admit(Long objectId) {
+    if (!inFlight.contains(objectId) && isFull()) {
+      log.info("[Admission] Waiting with {} objects in flight and {} bytes staged", inFlight.size(),
+          stagedBytes);
+      try {
+        while (isFull()) {
+          wait(recheckMillis);
+          if (isFull()) recheck();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    inFlight.add(objectId);
+  }
+
+  /**
+   * Records the bytes the object has written to the work directory, replacing what it recorded
+   * before.
+   *
+   * @param objectId the StatusInfo id
+   * @param bytes the bytes staged
+   */
+  public synchronized void staged(Long objectId, long bytes) {
+    Long previous = staged.put(objectId, bytes);
+    stagedBytes += bytes - (previous == null ? 0 : previous);
+    notifyAll();
+  }
+
+  /**
+   * Frees the bytes of the object once its files are removed from the work directory.
+   *
+   * @param objectId the StatusInfo id
+   */
+  public synchronized void unstaged(Long objectId) {
+    Long previous = staged.remove(objectId);
+    if (previous != null) {
+      stagedBytes -= previous;
+      notifyAll();
+    }
+  }
+
+  /**
+   * Frees the slot of the object once its workflow has ended for good, or once it is known it will
+   * not be received. Its bytes stay staged until the cleanup removes its files.
+   *
+   * @param objectId the StatusInfo id
+   */
+  public synchronized void release(Long objectId) {
+    if (inFlight.remove(objectId)) {
+      notifyAll();
+    }
+  }
+
+  /** @return the number of admitted objects that have not ended yet */
+  public synchronized int getInFlightCount() {
+    return inFlight.size();
+  }
+
+  /** @return the bytes staged in the work directory */
+  public synchronized long getStagedBytes() {
+    return stagedBytes;
+  }
+
+  /**
+   * The scheduler sends every object it admitted before it waits, so once the inbound queue has
+   * nothing queued and nothing in flight the objects still holding a slot are no longer on the
+   * broker, such as one whose message went to the dead letter queue. Their slots are freed.
+   */
+  private void recheck() {
+    int queued = sender.getQueueCount("inbound.queue");
+    long delivered = sender.getInFlightCount("inbound.queue");
+    log.info("[Admission] Still waiting with {} objects in flight and {} bytes staged, the broker has {} queued and {} in flight",
+        inFlight.size(), stagedBytes, queued, delivered);
+    if (queued == 0 && delivered == 0 && !inFlight.isEmpty()) {
+      log.warn("[Admission] Freeing the slots of {} objects that are no longer on the broker", inFlight.size());
+      inFlight.clear();
+    }
+  }
+
+  // With nothing in flight there is nothing to wait for, so one object is always let through.
+  private boolean isFull() {
+    if (inFlight.isEmpty()) return false;
+    return (maxObjects > 0 && inFlight.size() >= maxObjects)
+        || (maxStagedBytes > 0 && stagedBytes >= maxStagedBytes);
+  }
+}
@@ -38,6 +38,12 @@ public class DmeSyncConsumer {
   @Autowired private DmeSyncWorkflow dmeSyncWorkflow;
 
   @Autowired private DmeSyncWorkflowServiceFactory dmeSyncWorkflowService;
+
+  @Autowired private DmeSyncAdmissionController admissionController;
+
+  @Autowired private DmeSyncRunTracker runTracker;
+
+  @Autowired private DmeSyncWorkItemClaimer workItemClaimer;
   
   private final AtomicInteger activeThreads = new AtomicInteger(0);
 
@@ -70,6 +76,9 @@ public class DmeSyncConsumer {
       Optional<StatusInfo> statusInfo = dmeSyncWorkflowService.getService(access).findStatusInfoById(syncMessage.getObjectId());
       if(!statusInfo.isPresent()) {
         log.error("[JMS Listener] Received message < {} > it does not exist.", syncMessage);
+        admissionController.release(syncMessage.getObjectId());
+        workItemClaimer.ended(syncMessage.getObjectId());
+        runTracker.finished(syncMessage.getObjectId());
         return null;
       }
       MDC.put("doc", statusInfo.get().getDoc());
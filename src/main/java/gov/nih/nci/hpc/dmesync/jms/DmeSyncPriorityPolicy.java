@@ -0,0 +1,47 @@
+package gov.nih.nci.hpc.dmesync.jms;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * DME Sync policy for the JMS priority of the requests sent to the inbound queue.
+ *
+ * <p>With largest-first the big objects start early, so they do not stretch the end of the run;
+ * with smallest-first the small objects do not wait behind the big ones. The size is mapped to
+ * the JMS priorities 0 to 9 on a log scale, from 1 KB or less to 128 GB or more. An object of
+ * unknown size, such as a folder the scan did not go into, keeps the default priority.
+ */
+@Component
+public class DmeSyncPriorityPolicy {
+
+  public static final String NONE = "none";
+  public static final String LARGEST_FIRST = "largest-first";
+  public static final String SMALLEST_FIRST = "smallest-first";
+
+  /** The JMS default priority. */
+  public static final int DEFAULT_PRIORITY = 4;
+
+  @Value("${dmesync.jms.priority.policy:none}")
+  private String policy;
+
+  @PostConstruct
+  private void checkPolicy() {
+    if (!NONE.equals(policy) && !LARGEST_FIRST.equals(policy) && !SMALLEST_FIRST.equals(policy)) {
+      throw new IllegalArgumentException("Unknown dmesync.jms.priority.policy " + policy);
+    }
+  }
+
+  /**
+   * @param filesize the size of the object, may be null
+   * @return the JMS priority, or null to send the message with the template's priority
+   */
+  public Integer getPriority(Long filesize) {
+    if (NONE.equals(policy)) return null;
+    if (filesize == null || filesize <= 0) return DEFAULT_PRIORITY;
+    int log2 = 63 - Long.numberOfLeadingZeros(filesize);
+    int bucket = Math.max(0, Math.min(9, (log2 - 10) / 3));
+    return LARGEST_FIRST.equals(policy) ? bucket : 9 - bucket;
+  }
+}
@@ -1,14 +1,30 @@
 package gov.nih.nci.hpc.dmesync.jms;
 
+import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
+import javax.jms.Destination;
+import javax.jms.MessageProducer;
+
+import org.apache.activemq.broker.BrokerRegistry;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.DestinationStatistics;
+import org.apache.activemq.command.ActiveMQQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jms.connection.ConnectionFactoryUtils;
 import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.support.JmsUtils;
 import org.springframework.stereotype.Component;
+import gov.nih.nci.hpc.dmesync.DmeSyncWorkflowServiceFactory;
 import gov.nih.nci.hpc.dmesync.dto.DmeSyncMessageDto;
 
 /**
@@ -24,16 +40,214 @@ public class DmeSyncProducer {
   @Value("${dmesync.jms.transactional:true}")
   private boolean transactionalState;
 
+  @Value("${spring.activemq.broker-url:}")
+  private String brokerUrl;
+
+  @Value("${dmesync.cluster.enabled:false}")
+  private boolean clusterEnabled;
+
+  @Value("${dmesync.jms.outbox:false}")
+  private boolean outboxEnabled;
+
+  @Value("${dmesync.cluster.lease.seconds:300}")
+  private long leaseSeconds;
+
+  @Value("${dmesync.workflow.server.id:}")
+  private String serverId;
+
+  @Value("${dmesync.doc.name:}")
+  private String doc;
+
+  @Value("${dmesync.db.access:local}")
+  private String access;
+
+  @Autowired private DmeSyncWorkflowServiceFactory dmeSyncWorkflowService;
+
   @Autowired private JmsTemplate jmsTemplate;
 
+  @Autowired private DmeSyncRunTracker runTracker;
+
   public void send(DmeSyncMessageDto message, String queue) {
+    if (message.getPriority() != null || clusterEnabled || outboxEnabled) {
+      // The template sends with its own priority, and holds nothing in the claim table.
+      send(List.of(message), queue);
+      return;
+    }
     log.debug("[JMS Producer] Sending message <{}>", message);
+    // Tracked before sending, a consumer may finish the object before the send returns.
+    runTracker.enqueued(message.getObjectId());
+    jmsTemplate.setSessionTransacted(transactionalState);
+    try {
+      jmsTemplate.convertAndSend(queue, message);
+    } catch (RuntimeException e) {
+      runTracker.finished(message.getObjectId());
+      throw e;
+    }
+  }
+
+  /**
+   * Sends the messages to the queue with one producer on one session. When the session is
+   * transacted it is committed once after the last message, so the messages are delivered
+   * together or not at all. A message with a priority is sent with it as its JMS priority.
+   *
+   * <p>In cluster mode the objects are held in the claim table by this node, so the run is not
+   * complete before they are. With the outbox they are kept there until they end, so they can be
+   * sent again after a restart. An object that is still outstanding on this node, or whose work
+   * item is leased by another node, is not sent again. A work item left by an object that never
+   * ended is taken over.
+   *
+   * @param messages the messages to send
+   * @param queue the queue name
+   * @return the ids of the objects not sent
+   */
+  public List<Long> send(List<DmeSyncMessageDto> messages, String queue) {
+    List<Long> skipped = new ArrayList<>();
+    if (messages.isEmpty()) return skipped;
+    if (clusterEnabled || outboxEnabled) {
+      List<Long> objectIds = new ArrayList<>();
+      for (DmeSyncMessageDto message : messages) {
+        if (runTracker.isOutstanding(message.getObjectId())) skipped.add(message.getObjectId());
+        else objectIds.add(message.getObjectId());
+      }
+      // The outbox of a single node has no other node to lease from.
+      Timestamp leaseExpiration =
+          clusterEnabled ? DmeSyncWorkItemClaimer.getLeaseExpiration(leaseSeconds) : null;
+      List<Long> held = objectIds.isEmpty() ? objectIds
+          : dmeSyncWorkflowService.getService(access).holdWorkItems(objectIds, doc, serverId, leaseExpiration);
+      if (held.size() < messages.size()) {
+        Set<Long> heldIds = new HashSet<>(held);
+        for (Long objectId : objectIds) {
+          if (!heldIds.contains(objectId)) skipped.add(objectId);
+        }
+        log.info("[JMS Producer] Skipping {} objects still outstanding", skipped.size());
+        messages = messages.stream().filter(m -> heldIds.contains(m.getObjectId())).collect(Collectors.toList());
+      }
+    }
+    sendClaimed(messages, queue);
+    return skipped;
+  }
+
+  /**
+   * Sends the messages of work items this node has claimed.
+   *
+   * @param messages the messages to send
+   * @param queue the queue name
+   */
+  void sendClaimed(List<DmeSyncMessageDto> messages, String queue) {
+    if (messages.isEmpty()) return;
+    log.debug("[JMS Producer] Sending {} messages", messages.size());
+    for (DmeSyncMessageDto message : messages) {
+      runTracker.enqueued(message.getObjectId());
+    }
     jmsTemplate.setSessionTransacted(transactionalState);
-    jmsTemplate.convertAndSend(queue, message);
-   
+    try {
+      sendAll(messages, queue);
+    } catch (RuntimeException e) {
+      for (DmeSyncMessageDto message : messages) {
+        runTracker.finished(message.getObjectId());
+      }
+      throw e;
+    }
+  }
+
+  private void sendAll(List<DmeSyncMessageDto> messages, String queue) {
+    jmsTemplate.execute(
+        session -> {
+          Destination destination =
+              jmsTemplate.getDestinationResolver().resolveDestinationName(session, queue, false);
+          MessageProducer producer = session.createProducer(destination);
+          try {
+            for (DmeSyncMessageDto message : messages) {
+              javax.jms.Message jmsMessage = jmsTemplate.getMessageConverter().toMessage(message, session);
+              if (message.getPriority() == null) {
+                producer.send(jmsMessage);
+              } else {
+                producer.send(jmsMessage, producer.getDeliveryMode(), message.getPriority(),
+                    producer.getTimeToLive());
+              }
+            }
+            // A session of an enclosing transaction, such as a listener's, is committed by its owner.
+            if (session.getTransacted()
+                && !ConnectionFactoryUtils.isSessionTransactional(
+                    session, jmsTemplate.getConnectionFactory())) {
+              JmsUtils.commitIfNecessary(session);
+            }
+          } finally {
+            JmsUtils.closeMessageProducer(producer);
+          }
+          return null;
+        },
+        false);
   }
 
+  /**
+   * Returns the number of messages waiting in the queue. With the embedded broker it is read from
+   * the queue statistics, otherwise the queue is browsed.
+   *
+   * @param queue the queue name
+   * @return the number of messages in the queue
+   */
   public int getQueueCount(String queue) {
+    DestinationStatistics statistics = getQueueStatistics(queue);
+    if (statistics != null) {
+      return (int) statistics.getMessages().getCount();
+    }
+    return browseQueueCount(queue);
+  }
+
+  /**
+   * @param queue the queue name
+   * @return the number of messages dispatched to a consumer and not yet acknowledged, or -1 if the
+   *     broker is not embedded
+   */
+  public long getInFlightCount(String queue) {
+    DestinationStatistics statistics = getQueueStatistics(queue);
+    return statistics == null ? -1 : statistics.getInflight().getCount();
+  }
+
+  /**
+   * @param queue the queue name
+   * @return the number of messages acknowledged since the broker started, or -1 if the broker is
+   *     not embedded
+   */
+  public long getDequeueCount(String queue) {
+    DestinationStatistics statistics = getQueueStatistics(queue);
+    return statistics == null ? -1 : statistics.getDequeues().getCount();
+  }
+
+  /**
+   * Looks up the statistics of the queue in the embedded broker.
+   *
+   * @param queue the queue name
+   * @return the statistics, or null if the broker is not in this JVM
+   */
+  private DestinationStatistics getQueueStatistics(String queue) {
+    String brokerName = getEmbeddedBrokerName(brokerUrl);
+    if (brokerName == null) return null;
+    BrokerService broker = BrokerRegistry.getInstance().lookup(brokerName);
+    if (broker == null || broker.getRegionBroker() == null) return null;
+    try {
+      org.apache.activemq.broker.region.Destination destination =
+          broker.getRegionBroker().getDestinationMap().get(new ActiveMQQueue(queue));
+      // Nothing has been sent to a queue the broker has not created yet.
+      return destination == null ? new DestinationStatistics() : destination.getDestinationStatistics();
+    } catch (RuntimeException e) {
+      log.warn("[JMS Producer] Failed to read the statistics of {}, browsing it instead", queue, e);
+      return null;
+    }
+  }
+
+  /**
+   * @param brokerUrl the spring.activemq.broker-url
+   * @return the name the broker of a vm://name?... URL is registered under, or null if the URL
+   *     is not a vm URL
+   */
+  public static String getEmbeddedBrokerName(String brokerUrl) {
+    if (brokerUrl == null || !brokerUrl.startsWith("vm://")) return null;
+    return brokerUrl.substring("vm://".length()).split("\\?", 2)[0];
+  }
+
+  private int browseQueueCount(String queue) {
     return jmsTemplate.browse(
         queue,
         (session, browser) -> {
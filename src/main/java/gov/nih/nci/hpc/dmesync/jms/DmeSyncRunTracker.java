@@ -0,0 +1,111 @@
+package gov.nih.nci.hpc.dmesync.jms;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * DME Sync tracking of the objects sent to the inbound queue that have not finished their workflow.
+ *
+ * <p>An object is outstanding from the time it is sent until its workflow ends for good, a workflow
+ * that fails to be retried stays outstanding until its message is redelivered. Once the scheduler
+ * has stopped enqueuing for a run and no object is outstanding, the run is complete and the
+ * completion listener is called once, on a thread of its own so it can shut the listeners down.
+ */
+@Component
+public class DmeSyncRunTracker {
+
+  private static final Logger log = LoggerFactory.getLogger(DmeSyncRunTracker.class);
+
+  private final Set<Long> outstanding = new HashSet<>();
+  private boolean enqueuing;
+  private boolean completionPending;
+  private Runnable completionListener;
+
+  /**
+   * Sets what to do when a run is complete.
+   *
+   * @param completionListener the completion check
+   */
+  public synchronized void setCompletionListener(Runnable completionListener) {
+    this.completionListener = completionListener;
+  }
+
+  /** Marks the start of the scheduler enqueuing for a run. */
+  public synchronized void startRun() {
+    enqueuing = true;
+    completionPending = true;
+  }
+
+  /** Marks the end of the scheduler enqueuing for the run. */
+  public synchronized void endRun() {
+    enqueuing = false;
+    completeIfDone();
+  }
+
+  /**
+   * Records an object about to be sent to the inbound queue.
+   *
+   * @param objectId the StatusInfo id
+   */
+  public synchronized void enqueued(Long objectId) {
+    outstanding.add(objectId);
+  }
+
+  /**
+   * Records an object whose workflow has ended, or that will not be processed.
+   *
+   * @param objectId the StatusInfo id
+   */
+  public synchronized void finished(Long objectId) {
+    if (outstanding.remove(objectId)) {
+      completeIfDone();
+    }
+  }
+
+  /**
+   * Drops the objects still outstanding once the queue is known to be drained, such as objects whose
+   * messages went to the dead letter queue or that were sent before a restart. The completion of the
+   * run is then left to the caller.
+   *
+   * @return the number of objects dropped
+   */
+  public synchronized int clearOutstanding() {
+    int count = outstanding.size();
+    outstanding.clear();
+    if (!enqueuing) completionPending = false;
+    return count;
+  }
+
+  /**
+   * @param objectId the StatusInfo id
+   * @return true if the object was sent and has not finished
+   */
+  public synchronized boolean isOutstanding(Long objectId) {
+    return outstanding.contains(objectId);
+  }
+
+  /** @return true if a run has started and has not completed yet */
+  public synchronized boolean hasPendingRun() {
+    return completionPending;
+  }
+
+  /** @return the number of objects sent that have not finished */
+  public synchronized int getOutstandingCount() {
+    return outstanding.size();
+  }
+
+  private void completeIfDone() {
+    if (enqueuing || !completionPending || !outstanding.isEmpty() || completionListener == null) {
+      return;
+    }
+    completionPending = false;
+    log.info("[Run Tracker] All objects enqueued for the run have finished");
+    Thread thread = new Thread(completionListener, "dmesync-run-completion");
+    thread.setDaemon(true);
+    thread.start();
+  }
+}
@@ -0,0 +1,226 @@
+package gov.nih.nci.hpc.dmesync.jms;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import gov.nih.nci.hpc.dmesync.DmeSyncWorkflowServiceFactory;
+import gov.nih.nci.hpc.dmesync.domain.WorkItem;
+import gov.nih.nci.hpc.dmesync.dto.DmeSyncMessageDto;
+import gov.nih.nci.hpc.dmesync.service.DmeSyncWorkflowRunLogService;
+
+/**
+ * DME Sync cluster mode: claims the work items the scanning node wrote to the shared claim table
+ * and feeds them to this node's inbound queue.
+ *
+ * <p>Each node keeps a few objects queued ahead of its listeners, claiming them with row locks
+ * that skip the rows another node is claiming. While a node holds a work item it renews the
+ * lease on it, on a thread of its own so a long scan on the scheduler thread does not hold the
+ * renewal back; the work items of a node that stops renewing are claimed by another node once the
+ * lease expires. A work item is deleted once the workflow of its object has ended. Claims are
+ * made on a thread of their own as well, so the scanning node claims its share while it scans,
+ * and the run is checked for completion on that thread once the claim table has been drained.
+ *
+ * <p>On a single node, the outbox keeps a work item for each object sent until it ends, the in-VM
+ * queue being lost on a restart. The objects left from before are sent again once the application
+ * is ready, instead of being found by a rescan.
+ */
+@Component
+public class DmeSyncWorkItemClaimer {
+
+  private static final Logger log = LoggerFactory.getLogger(DmeSyncWorkItemClaimer.class);
+
+  @Value("${dmesync.cluster.enabled:false}")
+  private boolean clusterEnabled;
+
+  @Value("${dmesync.jms.outbox:false}")
+  private boolean outboxEnabled;
+
+  @Value("${dmesync.cluster.claim.size:10}")
+  private int claimSize;
+
+  @Value("${dmesync.cluster.claim.interval:10000}")
+  private long claimIntervalMillis;
+
+  @Value("${dmesync.cluster.lease.seconds:300}")
+  private long leaseSeconds;
+
+  @Value("${dmesync.workflow.server.id:}")
+  private String serverId;
+
+  @Value("${dmesync.doc.name}")
+  private String doc;
+
+  @Value("${dmesync.db.access:local}")
+  private String access;
+
+  @Autowired private DmeSyncProducer sender;
+
+  @Autowired private DmeSyncRunTracker runTracker;
+
+  @Autowired private DmeSyncWorkflowServiceFactory dmeSyncWorkflowService;
+
+  @Autowired private DmeSyncWorkflowRunLogService dmeSyncWorkflowRunLogService;
+
+  private ScheduledExecutorService leaseRenewal;
+
+  private ScheduledExecutorService claims;
+
+  // Run once the claim table has no work items left for the doc.
+  private volatile Runnable drainedListener;
+
+  @PostConstruct
+  private void init() {
+    if (!clusterEnabled) return;
+    if (StringUtils.isBlank(serverId)) {
+      throw new IllegalArgumentException("dmesync.workflow.server.id is required in cluster mode");
+    }
+    // The in-VM queue does not survive a restart, so what this node held is claimable again.
+    int released = dmeSyncWorkflowRunLogService.releaseWorkItemLeases(serverId);
+    log.info("[Cluster] Node {} released {} work items held before its start", serverId, released);
+
+    // Renewed three times per lease, so one missed renewal does not let the leases expire.
+    long renewalMillis = Math.max(1, TimeUnit.SECONDS.toMillis(leaseSeconds) / 3);
+    leaseRenewal = newExecutor("dmesync-lease-renewal");
+    leaseRenewal.scheduleWithFixedDelay(
+        this::renewLeases, renewalMillis, renewalMillis, TimeUnit.MILLISECONDS);
+
+    claims = newExecutor("dmesync-claims");
+    claims.scheduleWithFixedDelay(
+        this::claimCycle, claimIntervalMillis, claimIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  @PreDestroy
+  private void shutdown() {
+    if (leaseRenewal != null) leaseRenewal.shutdownNow();
+    if (claims != null) claims.shutdownNow();
+  }
+
+  private static ScheduledExecutorService newExecutor(String name) {
+    return Executors.newSingleThreadScheduledExecutor(
+        runnable -> {
+          Thread thread = new Thread(runnable, name);
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+
+  /**
+   * Runs the action on the claim thread once the claim table has no work items left for the doc,
+   * replacing the action set before.
+   *
+   * @param action the action to run, or null to clear it
+   */
+  public void runWhenDrained(Runnable action) {
+    drainedListener = action;
+  }
+
+  /** Claims work items, then runs the drained listener once nothing is left to claim. */
+  void claimCycle() {
+    claimWorkItems();
+    Runnable action = drainedListener;
+    if (action == null) return;
+    try {
+      if (dmeSyncWorkflowService.getService(access).countWorkItems(doc) > 0) return;
+      drainedListener = null;
+      action.run();
+    } catch (Exception e) {
+      // Checked again on the next claim cycle.
+      log.error("[Cluster] Node {} failed to check for the completed run", serverId, e);
+    }
+  }
+
+  /** Renews the leases on the work items this node holds. */
+  void renewLeases() {
+    try {
+      int renewed =
+          dmeSyncWorkflowRunLogService.renewWorkItemLeases(serverId, getLeaseExpiration(leaseSeconds));
+      log.debug("[Cluster] Node {} renewed {} leases", serverId, renewed);
+    } catch (Exception e) {
+      // Tried again on the next renewal, the lease is three renewals long.
+      log.error("[Cluster] Node {} failed to renew its leases", serverId, e);
+    }
+  }
+
+  /** Claims work items while the queue of this node runs low. */
+  public void claimWorkItems() {
+    if (!clusterEnabled) return;
+    try {
+      Timestamp leaseExpiration = getLeaseExpiration(leaseSeconds);
+      int room = claimSize - sender.getQueueCount("inbound.queue");
+      if (room <= 0) return;
+      List<WorkItem> claimed =
+          dmeSyncWorkflowService.getService(access).claimWorkItems(doc, serverId, room, leaseExpiration);
+      if (claimed.isEmpty()) return;
+
+      List<DmeSyncMessageDto> messages = new ArrayList<>();
+      for (WorkItem workItem : claimed) {
+        DmeSyncMessageDto message = new DmeSyncMessageDto(workItem.getObjectId());
+        message.setPriority(workItem.getPriority());
+        messages.add(message);
+      }
+      log.info("[Cluster] Node {} claimed {} work items", serverId, claimed.size());
+      sender.sendClaimed(messages, "inbound.queue");
+    } catch (Exception e) {
+      // Whatever was claimed and not sent is claimed again once its lease expires.
+      log.error("[Cluster] Node {} failed to claim work items", serverId, e);
+    }
+  }
+
+  /**
+   * Sends the objects left in the outbox by a previous start to the queue again, as a run of its
+   * own so its result is sent once they end.
+   */
+  @EventListener(ApplicationReadyEvent.class)
+  public void resumeOutbox() {
+    if (!outboxEnabled || clusterEnabled) return;
+    List<WorkItem> outstanding = dmeSyncWorkflowService.getService(access).findAllWorkItems(doc);
+    if (outstanding.isEmpty()) return;
+    log.info("[Outbox] Sending {} objects left from before the restart", outstanding.size());
+    List<DmeSyncMessageDto> messages = new ArrayList<>();
+    for (WorkItem workItem : outstanding) {
+      DmeSyncMessageDto message = new DmeSyncMessageDto(workItem.getObjectId());
+      message.setPriority(workItem.getPriority());
+      messages.add(message);
+    }
+    runTracker.startRun();
+    try {
+      sender.sendClaimed(messages, "inbound.queue");
+    } finally {
+      runTracker.endRun();
+    }
+  }
+
+  /**
+   * Deletes the work item of the object once its workflow has ended.
+   *
+   * @param objectId the StatusInfo id
+   */
+  public void ended(Long objectId) {
+    if (!clusterEnabled && !outboxEnabled) return;
+    dmeSyncWorkflowService.getService(access).deleteWorkItem(objectId);
+  }
+
+  /**
+   * @param leaseSeconds the lease length
+   * @return the expiration of a lease taken now
+   */
+  static Timestamp getLeaseExpiration(long leaseSeconds) {
+    return new Timestamp(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(leaseSeconds));
+  }
+}
@@ -11,16 +11,39 @@ import java.nio.file.Paths;
 import java.sql.Timestamp;
 import java.text.SimpleDateFormat;
 import java.time.Instant;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
@@ -32,24 +55,35 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 
+import gov.nih.nci.hpc.dmesync.util.CompletedPathSet;
 import gov.nih.nci.hpc.dmesync.util.DmeMetadataBuilder;
+import gov.nih.nci.hpc.dmesync.util.HpcDirectoryWatcher;
 import gov.nih.nci.hpc.dmesync.util.HpcLocalDirectoryListQuery;
 import gov.nih.nci.hpc.dmesync.util.HpcPathAttributes;
+import gov.nih.nci.hpc.dmesync.util.HpcScanResult;
 import gov.nih.nci.hpc.dmesync.util.PathUtil;
+import gov.nih.nci.hpc.dmesync.util.PriorStatusIndex;
+import gov.nih.nci.hpc.dmesync.util.ScanCheckpoint;
 import gov.nih.nci.hpc.dmesync.util.TarUtil;
 import gov.nih.nci.hpc.dmesync.util.WorkflowConstants;
 import gov.nih.nci.hpc.dmesync.workflow.impl.DmeSyncAWSScanDirectory;
 import gov.nih.nci.hpc.dmesync.workflow.impl.DmeSyncDataObjectListQuery;
 import gov.nih.nci.hpc.dmesync.workflow.impl.DmeSyncVerifyTaskImpl;
+import gov.nih.nci.hpc.domain.error.HpcErrorType;
 import gov.nih.nci.hpc.exception.HpcException;
 import gov.nih.nci.hpc.dmesync.DmeSyncApplication;
 import gov.nih.nci.hpc.dmesync.DmeSyncMailServiceFactory;
 import gov.nih.nci.hpc.dmesync.DmeSyncWorkflowServiceFactory;
 import gov.nih.nci.hpc.dmesync.domain.StatusInfo;
+import gov.nih.nci.hpc.dmesync.domain.WorkItem;
 import gov.nih.nci.hpc.dmesync.domain.WorkflowRunInfo;
 import gov.nih.nci.hpc.dmesync.dto.DmeSyncMessageDto;
+import gov.nih.nci.hpc.dmesync.jms.DmeSyncAdmissionController;
 import gov.nih.nci.hpc.dmesync.jms.DmeSyncConsumer;
+import gov.nih.nci.hpc.dmesync.jms.DmeSyncPriorityPolicy;
 import gov.nih.nci.hpc.dmesync.jms.DmeSyncProducer;
+import gov.nih.nci.hpc.dmesync.jms.DmeSyncRunTracker;
+import gov.nih.nci.hpc.dmesync.jms.DmeSyncWorkItemClaimer;
 import gov.nih.nci.hpc.dmesync.service.DmeSyncWorkflowRunLogService;
 
 /**
@@ -67,7 +101,11 @@ public class DmeSyncScheduler {
   private final SimpleDateFormat timestampFormat = new SimpleDateFormat("yyyyMMddHHmmss");
 
   @Autowired private DmeSyncProducer sender;
+  @Autowired private DmeSyncAdmissionController admissionController;
+  @Autowired private DmeSyncRunTracker runTracker;
+  @Autowired private DmeSyncPriorityPolicy priorityPolicy;
   @Autowired private DmeSyncConsumer consumer;
+  @Autowired private DmeSyncWorkItemClaimer workItemClaimer;
   @Autowired private DmeSyncMailServiceFactory dmeSyncMailServiceFactory;
   @Autowired private DmeSyncWorkflowServiceFactory dmeSyncWorkflowService;
   @Autowired private DmeSyncDataObjectListQuery dmeSyncDataObjectListQuery;
@@ -205,6 +243,13 @@ public class DmeSyncScheduler {
   
   @Value("${dmesync.workflow.server.id:}")
   private String workflowServerId;
+
+  @Value("${dmesync.cluster.enabled:false}")
+  private boolean clusterEnabled;
+
+  // In cluster mode, whether this node scans and writes the work items or only claims them.
+  @Value("${dmesync.cluster.scan:true}")
+  private boolean clusterScan;
   
   @Value("${spring.jms.listener.concurrency:}")
   private Integer workflowThreads;
@@ -221,14 +266,79 @@ public class DmeSyncScheduler {
   @Value("${dmesync.retry.prior.run.failures:false}")
   private boolean retryPriorRunFailures;
   
+  @Value("${dmesync.scan.parallelism:1}")
+  private int scanParallelism;
+
+  @Value("${dmesync.scan.streaming:false}")
+  private boolean streamingScan;
+
+  @Value("${dmesync.scan.queue.capacity:1000}")
+  private int scanQueueCapacity;
+
+  @Value("${dmesync.scan.index.dir:}")
+  private String scanIndexDir;
+
+  @Value("${dmesync.scan.folder.threads:1}")
+  private int scanFolderThreads;
+
+  @Value("${dmesync.scan.checkpoint.dir:}")
+  private String scanCheckpointDir;
+
+  @Value("${dmesync.scan.checkpoint.seconds:300}")
+  private long scanCheckpointSeconds;
+
+  @Value("${dmesync.watch.enabled:false}")
+  private boolean watchEnabled;
+
+  @Value("${dmesync.watch.quiet.period.minutes:10}")
+  private long watchQuietPeriodMinutes;
+
+  @Value("${dmesync.watch.rescan.hours:24}")
+  private long watchRescanHours;
+
+  @Value("${dmesync.preload.prior.status:false}")
+  private boolean preloadPriorStatus;
+
+  @Value("${dmesync.jms.batch.size:100}")
+  private int jmsBatchSize;
+
+  @Value("${dmesync.eligibility.threads:1}")
+  private int eligibilityThreads;
+  
   private String runId;
 
+  // Marks the end of a streaming scan in the hand over queue.
+  private static final HpcPathAttributes END_OF_SCAN = new HpcPathAttributes();
+
+  private HpcDirectoryWatcher watcher;
+
+  private long lastWatchScan;
+
+  private boolean watchUnavailable;
+
+  // Continuous mode: the directories changed since the last scan, the run only lists what is in them. Null for a full scan.
+  private List<File> changedDirectories;
+
+  // Statuses of the paths under the base dir loaded for the current run, null to query each file.
+  private PriorStatusIndex priorStatuses;
+
+  // Paths known to be completed, null to query each file.
+  private CompletedPathSet completedPaths;
+
+  // Checks the files of the current run for eligibility, null to check them one at a time.
+  private ExecutorService eligibilityExecutor;
+
+  // How far the streaming scan of the current run got, null if not kept.
+  private ScanCheckpoint scanCheckpoint;
+
   /**
    * Main scheduler method to crawl the file system and find files to enqueue
    */
   @Scheduled(cron = "${dmesync.cron.expression}")
   public void findFilesToPush() {
 	  
+	if (clusterEnabled && !clusterScan)
+		return;
 		 
 	  dmeMetadataBuilder.evictMetadataMap();
 
@@ -249,16 +359,31 @@ public class DmeSyncScheduler {
     }
     
     runId = shutDownFlag ? oneTimeRunId : "Run_" + timestampFormat.format(new Date());
+
+    // A scan that was interrupted is continued by the next run, under its run ID.
+    ScanCheckpoint checkpoint = changedDirectories == null ? loadScanCheckpoint() : null;
+    boolean resumingScan = checkpoint != null && checkpoint.getRunId() != null
+        && (!shutDownFlag || oneTimeRunId.equals(checkpoint.getRunId()));
+    if (resumingScan) {
+      runId = checkpoint.getRunId();
+      logger.info("[Scheduler] Continuing the interrupted scan of Run ID: {}", runId);
+    }
     
-    WorkflowRunInfo workflowRunInfo=insertWorkflowRunInfo();
+    // A continued run keeps the row inserted when it started.
+    WorkflowRunInfo workflowRunInfo = resumingScan ? resumeWorkflowRunInfo() : null;
+    if (workflowRunInfo == null)
+      workflowRunInfo=insertWorkflowRunInfo();
 	  logger.info(
 		        "[Scheduler] Workflow Run Information is inserted {}", workflowRunInfo);
 
-    if (shutDownFlag) {
+    if (shutDownFlag && !resumingScan) {
       //check if the one time run has already occurred
       List<StatusInfo> statusInfo = dmeSyncWorkflowService.getService(access).findStatusInfoByRunIdAndDoc(oneTimeRunId, doc);
-      //If it has been called already, return
+      //If it has been called already, check for its completion once nothing is outstanding and return
       if (!CollectionUtils.isEmpty(statusInfo)) {
+        runId = null;
+        runTracker.startRun();
+        runTracker.endRun();
         return;
       }
     }
@@ -299,7 +424,20 @@ public class DmeSyncScheduler {
     // If it finds a candidate, it checks the local db to see if it has been completed.
     // If not, then it inserts the data and sends the details to the message queue for processing.
 
+    if (checkpoint != null) {
+      checkpoint.start(runId);
+      scanCheckpoint = checkpoint;
+    }
+
+    runTracker.startRun();
     try {
+      if ("local".equals(verifyPrevUpload) && !replaceModifiedFiles) {
+        // A modified file is uploaded again, which the set of completed paths cannot tell.
+        completedPaths = dmeSyncWorkflowService.getService(access).openCompletedPathSet(doc);
+      }
+      if (eligibilityThreads > 1) {
+        eligibilityExecutor = Executors.newFixedThreadPool(eligibilityThreads);
+      }
       List<HpcPathAttributes> paths = null;
       if(createSoftlink) {
     	  paths = queryDataObjectsForSoftlinkCreation();
@@ -314,18 +452,28 @@ public class DmeSyncScheduler {
         return;
       } else if (awsFlag) {
     	  paths = dmeSyncAWSScanDirectory.getPathAttributes(syncBaseDir);
+      } else if (changedDirectories != null) {
+        // Only the directories changed since the last scan are listed
+        paths = scanChangedDirectories();
+      } else if (streamingScan && !selectiveScan && !createCollectionSoftlink) {
+        // Process the candidates while the base directory is still being scanned
+        priorStatuses = loadPriorStatuses();
+        streamScanDirectory();
       } else {
       // Scan through the specified base directory and find candidates for processing
+        priorStatuses = loadPriorStatuses();
     	  paths = scanDirectory();
       }
       
       List<HpcPathAttributes> folders = new ArrayList<>();
-      List<HpcPathAttributes> files = new ArrayList<>();
+      List<HpcPathAttributes> files = Collections.emptyList();
       if (paths != null && paths.isEmpty()) {
         logger.info("[Scheduler] No files/folders found for runID: {}", runId);
 
         String emailBody= "There were no files/folders found for processing"+(!StringUtils.isEmpty(syncBaseDirFolders)?" in "+syncBaseDirFolders+" folders":"")+ ".";
-        dmeSyncMailServiceFactory.getService(doc).sendMail("HPCDME Auto Archival Result for " + doc + " - Base Path: " + syncBaseDir,
+        // A change that leaves nothing to process, such as a deletion, is not reported.
+        if (changedDirectories == null)
+          dmeSyncMailServiceFactory.getService(doc).sendMail("HPCDME Auto Archival Result for " + doc + " - Base Path: " + syncBaseDir,
   			  emailBody);
         try {
             dmeSyncWorkflowRunLogService.updateWorkflowRunEnd(runId, doc, WorkflowConstants.RunStatus.SKIPPED.toString(),null);
@@ -338,35 +486,19 @@ public class DmeSyncScheduler {
 		}
         MDC.clear();
         return;
-      } else {
+      } else if (paths != null) {
         for (HpcPathAttributes pathAttr : paths) {
-          if (pathAttr.getIsDirectory() && !createCollectionSoftlink) {
-            //If depth of -1 is specified, skip if it is not a leaf folder
-            if (tar && depth.equals("-1") && skipIfNotLeafFolder) {
-              try(Stream<Path> stream = Files.list(Paths.get(pathAttr.getAbsolutePath()))) {
-               if(stream.anyMatch(x -> x.toFile().isDirectory()))
-                  continue;
-              }
-            }
-			// Only add the folder if the folder is not empty.
-			File folder = new File(pathAttr.getAbsolutePath());
-			String[] children = folder.list();
-			if (children == null) {
-				logger.warn("[Scheduler] Unable to list files in the Folder {}. It may be unreadable or inaccessible.",
-						pathAttr.getAbsolutePath());
-			} else if (children.length > 0) {
-				folders.add(pathAttr);
-			} else {
-				logger.info("[Scheduler] There are no files in the Folder  {}", pathAttr.getAbsolutePath());
-			}
-          } else {
-            files.add(pathAttr);
-          }
+          if (pathAttr.getIsDirectory() && !createCollectionSoftlink && isFolderToProcess(pathAttr))
+            folders.add(pathAttr);
         }
+        // The files stay in the compact scan result instead of being copied out of it.
+        files = HpcScanResult.select(paths, pathAttr -> !pathAttr.getIsDirectory() || createCollectionSoftlink);
       }
 
    // --- Selective Scan Enhancement ---
-      if (selectiveScan) {
+      if (paths == null) {
+        // Streaming scan, the candidates have been processed while the directory was scanned.
+      } else if (selectiveScan) {
        selectiveScanProcessing(folders, files);
       }
       
@@ -405,7 +537,8 @@ public class DmeSyncScheduler {
       String emailBody= "There were no files/folders found for processing"+(!StringUtils.isEmpty(syncBaseDirFolders)?" in "+syncBaseDirFolders+" folders":"")+ ".";
       if(CollectionUtils.isEmpty(currentRun)) {
     	  logger.info("[Scheduler] No files/folders found for RunID." + runId + " Doc "+ doc);
-    	  dmeSyncMailServiceFactory.getService(doc).sendMail("HPCDME Auto Archival Result for " + doc + " - Base Path: " + syncBaseDir,
+    	  if (changedDirectories == null)
+    	    dmeSyncMailServiceFactory.getService(doc).sendMail("HPCDME Auto Archival Result for " + doc + " - Base Path: " + syncBaseDir,
     			  emailBody);
           try {
               dmeSyncWorkflowRunLogService.updateWorkflowRunEnd(runId, doc, WorkflowConstants.RunStatus.SKIPPED.toString(),null);
@@ -425,7 +558,194 @@ public class DmeSyncScheduler {
     } finally {
       MDC.clear();
       runId = null;
+      priorStatuses = null;
+      completedPaths = null;
+      scanCheckpoint = null;
+      if (eligibilityExecutor != null) {
+        eligibilityExecutor.shutdownNow();
+        eligibilityExecutor = null;
+      }
+      runTracker.endRun();
+    }
+  }
+
+  /**
+   * Loads the checkpoint of the base dir if configured. Only the streaming scan is continued, as it
+   * processes what it finds while it scans, the other scans start over.
+   */
+  private ScanCheckpoint loadScanCheckpoint() {
+    if (StringUtils.isBlank(scanCheckpointDir) || !streamingScan || selectiveScan
+        || createCollectionSoftlink || createSoftlink || noScanRerun || awsFlag
+        || syncBaseDir == null) {
+      return null;
+    }
+    return ScanCheckpoint.load(scanCheckpointDir, syncBaseDir);
+  }
+
+  /**
+   * Loads the statuses of the paths under the base dir with one query if configured, so
+   * processFiles only queries the files that had no rows when the run started.
+   */
+  private PriorStatusIndex loadPriorStatuses() {
+    if (!preloadPriorStatus || !"local".equals(verifyPrevUpload) || syncBaseDir == null) {
+      return null;
+    }
+    long start = System.currentTimeMillis();
+    try {
+      // The scanned paths are canonical, so the rows are looked up by the canonical base dir.
+      String baseDir = new File(syncBaseDir).getCanonicalPath();
+      PriorStatusIndex index = dmeSyncWorkflowService.getService(access).loadPriorStatusIndex(baseDir);
+      logger.info("[Scheduler] Loaded the prior status of {} paths under {} in {} ms", index.size(),
+          baseDir, System.currentTimeMillis() - start);
+      return index;
+    } catch (IOException | RuntimeException e) {
+      logger.warn("[Scheduler] Failed to load the prior statuses, each file will be looked up", e);
+      return null;
+    }
+  }
+
+  /**
+   * Continuous mode: watches the base directory and, once a changed directory has been quiet for
+   * the quiet period, runs the scan over the directories that settled only, instead of waiting for
+   * the next cron run. Where the filesystem gives no events, such as changes made on another NFS
+   * client, or the directories cannot be watched, the whole base directory is still scanned every
+   * rescan interval.
+   */
+  @Scheduled(fixedDelayString = "${dmesync.watch.interval:60000}", initialDelayString = "${dmesync.watch.interval:60000}")
+  public void findChangedFilesToPush() {
+    if (!watchEnabled || shutDownFlag || awsFlag || createSoftlink || noScanRerun || moveProcessedFiles)
+      return;
+
+    long now = System.currentTimeMillis();
+    if (watcher == null && !watchUnavailable) {
+      List<Path> roots = new ArrayList<>();
+      try {
+        // Canonical, like the paths the scan finds.
+        for (String scanDir : getScanDirs())
+          roots.add(new File(scanDir).getCanonicalFile().toPath());
+        watcher = new HpcDirectoryWatcher(roots, splitPatterns(excludePattern), getWatchDepth());
+        lastWatchScan = now;
+        logger.info("[Scheduler] Watching {} for changes", roots);
+      } catch (IOException e) {
+        watchUnavailable = true;
+        lastWatchScan = now;
+        logger.warn("[Scheduler] Unable to watch {}, scanning every {} hours instead", getScanDirs(), watchRescanHours, e);
+      }
+    }
+
+    List<Path> settled = Collections.emptyList();
+    if (watcher != null) {
+      try {
+        watcher.poll();
+        settled = watcher.takeSettled(TimeUnit.MINUTES.toMillis(watchQuietPeriodMinutes));
+      } catch (IOException e) {
+        logger.warn("[Scheduler] Unable to watch {}, scanning every {} hours instead", getScanDirs(), watchRescanHours, e);
+        closeWatcher();
+        watchUnavailable = true;
+      }
+    }
+
+    if (now - lastWatchScan >= TimeUnit.HOURS.toMillis(watchRescanHours)) {
+      // The directories that settled are part of the full scan.
+      logger.info("[Scheduler] Scanning for the periodic rescan");
+      lastWatchScan = now;
+      findFilesToPush();
+      return;
+    }
+    if (settled.isEmpty())
+      return;
+
+    // These list the base directory their own way, so a change still scans all of it.
+    if (selectiveScan || createCollectionSoftlink || (tar && Integer.parseInt(depth) == 0)) {
+      logger.info("[Scheduler] Scanning for the changes in {} directories", settled.size());
+      findFilesToPush();
+      return;
+    }
+    logger.info("[Scheduler] Scanning the {} directories changed since the last scan", settled.size());
+    changedDirectories = settled.stream().map(Path::toFile).collect(Collectors.toList());
+    try {
+      findFilesToPush();
+    } finally {
+      changedDirectories = null;
+    }
+  }
+
+  /**
+   * Lists the entries of the changed directories the way the scan of the base directory finds them.
+   * With tar, a change anywhere in a folder at the tar depth lists that folder.
+   */
+  private List<HpcPathAttributes> scanChangedDirectories() throws HpcException {
+    HpcLocalDirectoryListQuery impl = new HpcLocalDirectoryListQuery(scanParallelism);
+    List<String> excludePatterns = splitPatterns(excludePattern);
+    List<String> includePatterns = splitPatterns(includePattern);
+    int scanDepth = tar ? Integer.parseInt(depth) : untar ? Integer.parseInt(depth) + 1 : 0;
+
+    Map<String, List<File>> scopes = new LinkedHashMap<>();
+    for (String scanDir : getScanDirs()) {
+      Path root;
+      try {
+        root = new File(scanDir).getCanonicalFile().toPath();
+      } catch (IOException e) {
+        throw new HpcException("Failed to get path attributes: " + scanDir, HpcErrorType.DATA_TRANSFER_ERROR, e);
+      }
+      Set<File> scope = new LinkedHashSet<>();
+      for (File dir : changedDirectories) {
+        Path changed = dir.toPath();
+        if (!changed.startsWith(root))
+          continue;
+        if (tar && scanDepth > 0) {
+          // Changes above the tar depth leave the folders as they were, a new folder registers as changed itself.
+          if (changed.equals(root) || root.relativize(changed).getNameCount() < scanDepth)
+            continue;
+          changed = root.resolve(root.relativize(changed).subpath(0, scanDepth));
+        }
+        scope.add(changed.toFile());
+      }
+      if (!scope.isEmpty())
+        scopes.put(scanDir, new ArrayList<>(scope));
+    }
+    if (scopes.isEmpty())
+      return Collections.emptyList();
+
+    List<HpcScanResult> folderResults;
+    try {
+      folderResults = scanFolders(new ArrayList<>(scopes.keySet()),
+          scanDir -> impl.getChangedPathAttributes(scanDir, excludePatterns, includePatterns, scanDepth,
+              scopes.get(scanDir)));
+    } finally {
+      reportSkippedDirectories(impl);
     }
+    return HpcScanResult.join(folderResults);
+  }
+
+  /**
+   * The depth the scan lists the candidates of the base directory at decides the deepest
+   * directories worth watching: with tar, changes in the folders to tar, with untar, the
+   * directories holding the tar files, otherwise every depth.
+   */
+  private int getWatchDepth() {
+    if (tar || untar)
+      return Integer.parseInt(depth);
+    return -1;
+  }
+
+  /** Splits the comma separated patterns, null if none are configured. */
+  private static List<String> splitPatterns(String patterns) {
+    return patterns == null || patterns.isEmpty()
+        ? null
+        : new ArrayList<>(Arrays.asList(patterns.split(",")));
+  }
+
+  @PreDestroy
+  private void closeWatcher() {
+    if (watcher == null)
+      return;
+    try {
+      watcher.close();
+    } catch (IOException e) {
+      logger.warn("[Scheduler] Failed to close the directory watcher", e);
+    }
+    watcher = null;
   }
 
   /**
@@ -454,24 +774,14 @@ public class DmeSyncScheduler {
         runId,
         syncBaseDir);
 
+    runTracker.startRun();
     try {
 
       List<StatusInfo> statusInfoList =
                 dmeSyncWorkflowService.getService(access).findAllFailedStatusInfoLikeOriginalFilePath(syncBaseDir + '%');
-       for(StatusInfo statusInfo : statusInfoList) {
-	      if(statusInfo != null) {
-	    	//Update the run_id and reset the retry count and errors
-	    	prepareForReattempt(statusInfo);
-	    	statusInfo = dmeSyncWorkflowService.getService(access).saveStatusInfo(statusInfo);
-	    	// Delete the metadata info created for this object ID
-	    	dmeSyncWorkflowService.getService(access).deleteMetadataInfoByObjectId(statusInfo.getId());
-	    	// Send the incomplete objectId to the message queue for processing
-	        DmeSyncMessageDto message = new DmeSyncMessageDto();
-	        message.setObjectId(statusInfo.getId());
-	
-	        sender.send(message, "inbound.queue");
-	      }
-      }
+      List<StatusInfo> requests = new ArrayList<>();
+      sendForReattempt(statusInfoList, requests);
+      sendRequests(requests);
 
       logger.info(
           "[Scheduler] Completed restaring files at {} for Run ID: {} base directory to reprocess {}",
@@ -484,6 +794,7 @@ public class DmeSyncScheduler {
     } finally {
       MDC.clear();
       runId = null;
+      runTracker.endRun();
     }
   }
   
@@ -508,65 +819,367 @@ public class DmeSyncScheduler {
 
         List<StatusInfo> statusInfoList =
             dmeSyncWorkflowService.getService(access).findAllFailedStatusInfoLikeOriginalFilePath(queryPath+'%');
-
-        for(StatusInfo statusInfo : statusInfoList) {
-          if(statusInfo != null) {
-            //Update the run_id and reset the retry count and errors
-        	 prepareForReattempt(statusInfo);
-            statusInfo = dmeSyncWorkflowService.getService(access).saveStatusInfo(statusInfo);
-            // Delete the metadata info created for this object ID
-            dmeSyncWorkflowService.getService(access).deleteMetadataInfoByObjectId(statusInfo.getId());
-            // Send the incomplete objectId to the message queue for processing
-            DmeSyncMessageDto message = new DmeSyncMessageDto();
-            message.setObjectId(statusInfo.getId());
-
-            sender.send(message, "inbound.queue");
-          }
-        }
+        List<StatusInfo> requests = new ArrayList<>();
+        sendForReattempt(statusInfoList, requests);
+        sendRequests(requests);
       }
     }
 
   }
   
+  /**
+   * Scans the base directory like {@link #scanDirectory()} but passes each file/folder to the
+   * consumer as soon as it is found. With several base dir folders scanned at once, the consumer
+   * is called from several threads.
+   */
+  private void scanDirectory(Consumer<HpcPathAttributes> consumer) throws HpcException {
+    HpcLocalDirectoryListQuery impl = new HpcLocalDirectoryListQuery(scanParallelism, scanIndexDir);
+    List<String> excludePatterns = splitPatterns(excludePattern);
+    List<String> includePatterns = splitPatterns(includePattern);
+    List<String> scanDirs = getScanDirs();
+
+    if (!scanDirs.isEmpty()) {
+      if(tar && Integer.parseInt(depth) == 0) {
+        toHpcPathAttribute(scanDirs.get(0)).forEach(consumer);
+        return;
+      }
+      int scanDepth = tar ? Integer.parseInt(depth) : untar ? Integer.parseInt(depth) + 1 : 0;
+      try {
+        scanFolders(scanDirs, scanDir -> {
+          AtomicInteger count = new AtomicInteger();
+          impl.streamPathAttributes(scanDir, excludePatterns, includePatterns, scanDepth,
+              scanCheckpoint, pathAttr -> {
+                count.incrementAndGet();
+                consumer.accept(pathAttr);
+              });
+          return count.get();
+        });
+      } finally {
+        reportSkippedDirectories(impl);
+      }
+    }
+  }
+
   private List<HpcPathAttributes> scanDirectory() throws HpcException {
     
-    HpcLocalDirectoryListQuery impl = new HpcLocalDirectoryListQuery();
+    HpcLocalDirectoryListQuery impl = new HpcLocalDirectoryListQuery(scanParallelism, scanIndexDir);
     List<HpcPathAttributes> result = new ArrayList<>();
-    List<String> excludePatterns =
-        excludePattern == null || excludePattern.isEmpty()
-            ? null
-            : new ArrayList<>(Arrays.asList(excludePattern.split(",")));
-    List<String> includePatterns =
-        includePattern == null || includePattern.isEmpty()
-            ? null
-            : new ArrayList<>(Arrays.asList(includePattern.split(",")));
-    List<String> syncBaseDirFolderList =
-    		syncBaseDirFolders == null || syncBaseDirFolders.isEmpty()
-                ? null
-                : new ArrayList<>(Arrays.asList(syncBaseDirFolders.split(",")));
-    
-    if (syncBaseDir != null) {
-      int scanCount = syncBaseDirFolderList == null? 1: syncBaseDirFolderList.size();
-      String scanDir = null;
-      for(int i = 0; i < scanCount; i++) {
-    	  if(syncBaseDirFolderList == null)
-    		  scanDir = syncBaseDir;
-    	  else
-    		  scanDir = syncBaseDir + File.separatorChar + syncBaseDirFolderList.get(i);
-	      if(tar && Integer.parseInt(depth) == 0) {
-	    	  result = toHpcPathAttribute(scanDir);
-	    	  return result;
-	      }
-	      result.addAll(impl.getPathAttributes(
-	        		  scanDir,
-	              excludePatterns,
-	              includePatterns,
-	              tar ? Integer.parseInt(depth) : untar ? Integer.parseInt(depth) + 1 : 0));
+    List<String> excludePatterns = splitPatterns(excludePattern);
+    List<String> includePatterns = splitPatterns(includePattern);
+    List<String> scanDirs = getScanDirs();
+
+    if (!scanDirs.isEmpty()) {
+      if(tar && Integer.parseInt(depth) == 0) {
+        result = toHpcPathAttribute(scanDirs.get(0));
+        return result;
       }
+      int scanDepth = tar ? Integer.parseInt(depth) : untar ? Integer.parseInt(depth) + 1 : 0;
+      List<HpcScanResult> folderResults;
+      try {
+        folderResults = scanFolders(scanDirs,
+            scanDir -> impl.getPathAttributes(scanDir, excludePatterns, includePatterns, scanDepth));
+      } finally {
+        reportSkippedDirectories(impl);
+      }
+      // Joined in the order the folders are configured, whichever finished first.
+      result = HpcScanResult.join(folderResults);
     }
     return result;
   }
-  
+
+  /** Sends a warning with the subdirectories the scan left out because they could not be listed. */
+  private void reportSkippedDirectories(HpcLocalDirectoryListQuery impl) {
+    List<String> skipped = impl.getSkippedDirectories();
+    if (skipped.isEmpty()) return;
+    logger.warn("[Scheduler] {} directories could not be listed and were skipped for runID: {}",
+        skipped.size(), runId);
+    String list = skipped.stream().limit(100).collect(Collectors.joining("\n"));
+    if (skipped.size() > 100) list += "\n... and " + (skipped.size() - 100) + " more";
+    dmeSyncMailServiceFactory.getService(doc).sendMail("WARNING: HPCDME during registration",
+        "The following directories could not be listed and were skipped in this run:\n" + list);
+  }
+
+  /** Returns the directories to scan, the base dir or each of the base dir folders. */
+  private List<String> getScanDirs() {
+    List<String> scanDirs = new ArrayList<>();
+    if (syncBaseDir == null) {
+      return scanDirs;
+    }
+    if (syncBaseDirFolders == null || syncBaseDirFolders.isEmpty()) {
+      scanDirs.add(syncBaseDir);
+    } else {
+      for (String folder : syncBaseDirFolders.split(",")) {
+        scanDirs.add(syncBaseDir + File.separatorChar + folder);
+      }
+    }
+    return scanDirs;
+  }
+
+  /** Scans one directory, returning what it found. */
+  @FunctionalInterface
+  private interface FolderScan<T> {
+    T scan(String scanDir) throws HpcException;
+  }
+
+  /**
+   * Scans the directories with up to dmesync.scan.folder.threads at a time, so a slow mount does not
+   * hold up the others. When there are several directories, one that fails is logged and left out
+   * of the results, the scan only fails if all of them do.
+   *
+   * @return The result of each directory that was scanned, in the order of the directories.
+   */
+  private <T> List<T> scanFolders(List<String> scanDirs, FolderScan<T> folderScan)
+      throws HpcException {
+    int threads = Math.max(1, Math.min(scanFolderThreads, scanDirs.size()));
+    ExecutorService executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+    Map<String, String> mdc = MDC.getCopyOfContextMap();
+    List<Future<T>> futures = new ArrayList<>();
+    try {
+      for (String scanDir : scanDirs) {
+        Callable<T> task = () -> {
+          if (executor != null && mdc != null) MDC.setContextMap(mdc);
+          long start = System.currentTimeMillis();
+          try {
+            T result = folderScan.scan(scanDir);
+            logger.info("[Scheduler] Scanned {} in {} ms, found {} files/folders", scanDir,
+                System.currentTimeMillis() - start,
+                result instanceof List ? ((List<?>) result).size() : result);
+            return result;
+          } catch (HpcException | RuntimeException e) {
+            logger.error("[Scheduler] Failed to scan {} after {} ms", scanDir,
+                System.currentTimeMillis() - start, e);
+            throw e;
+          } finally {
+            if (executor != null) MDC.clear();
+          }
+        };
+        if (executor != null) {
+          futures.add(executor.submit(task));
+        } else {
+          FutureTask<T> future = new FutureTask<>(task);
+          future.run();
+          futures.add(future);
+        }
+      }
+
+      List<T> results = new ArrayList<>();
+      List<String> failedDirs = new ArrayList<>();
+      Throwable failure = null;
+      for (int i = 0; i < futures.size(); i++) {
+        try {
+          results.add(futures.get(i).get());
+        } catch (ExecutionException e) {
+          failedDirs.add(scanDirs.get(i));
+          if (failure == null) failure = e.getCause();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new HpcException("Interrupted while scanning " + scanDirs.get(i),
+              HpcErrorType.UNEXPECTED_ERROR, e);
+        }
+      }
+      if (failure != null && (results.isEmpty() || scanDirs.size() == 1)) {
+        if (failure instanceof HpcException) throw (HpcException) failure;
+        if (failure instanceof Error) throw (Error) failure;
+        throw (RuntimeException) failure;
+      }
+      if (!failedDirs.isEmpty()) {
+        dmeSyncMailServiceFactory.getService(doc).sendMail("WARNING: HPCDME during registration",
+            "The following folders could not be scanned and were skipped in this run: " + failedDirs
+                + "\n\n" + failure.getMessage());
+      }
+      return results;
+    } finally {
+      if (executor != null) executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Scans the base directory on a separate thread and processes each candidate as soon as the
+   * scanner finds it. The scanner hands the candidates over through a bounded queue, so it waits
+   * when the database checks and the enqueue fall behind and memory use does not depend on the
+   * size of the tree.
+   * <p>
+   * With a checkpoint, the directories the scanner completed are saved periodically once what it
+   * found in them has been processed and sent, so an interrupted scan is continued from there.
+   */
+  private void streamScanDirectory() throws Exception {
+    BlockingQueue<HpcPathAttributes> queue = new ArrayBlockingQueue<>(Math.max(1, scanQueueCapacity));
+    // Counted before an entry is queued, so a snapshot never counts on an entry it has not seen.
+    AtomicLong found = new AtomicLong();
+    AtomicReference<Exception> scanError = new AtomicReference<>();
+    AtomicBoolean cancelled = new AtomicBoolean();
+    Map<String, String> mdc = MDC.getCopyOfContextMap();
+
+    Thread scanner = new Thread(() -> {
+      if (mdc != null) MDC.setContextMap(mdc);
+      try {
+        scanDirectory(pathAttr -> {
+          found.incrementAndGet();
+          if (!handOver(queue, pathAttr, cancelled))
+            throw new IllegalStateException("Scan cancelled for " + pathAttr.getAbsolutePath());
+        });
+      } catch (Exception e) {
+        scanError.set(e);
+      } finally {
+        handOver(queue, END_OF_SCAN, cancelled);
+        MDC.clear();
+      }
+    }, "dmesync-scan");
+    scanner.setDaemon(true);
+    scanner.start();
+
+    int count = 0;
+    List<StatusInfo> requests = new ArrayList<>();
+    long checkpointMillis = TimeUnit.SECONDS.toMillis(Math.max(1, scanCheckpointSeconds));
+    long nextCheckpoint = System.currentTimeMillis() + checkpointMillis;
+    List<String> snapshot = null;
+    long snapshotFound = 0;
+    try {
+      boolean scanned = false;
+      while (!scanned) {
+        List<HpcPathAttributes> entries = new ArrayList<>();
+        if (queue.drainTo(entries, Math.max(1, eligibilityThreads * 4)) == 0) {
+          // Do not hold the pending requests while waiting for the scanner.
+          sendRequests(requests);
+          entries.add(queue.take());
+        }
+        // The entries found so far are checked together, on the eligibility threads if there are.
+        List<HpcPathAttributes> candidates = new ArrayList<>();
+        for (HpcPathAttributes pathAttr : entries) {
+          if (pathAttr == END_OF_SCAN) {
+            scanned = true;
+            break;
+          }
+          count++;
+          if (pathAttr.getIsDirectory()) {
+            if (tar && isFolderToProcess(pathAttr))
+              candidates.add(pathAttr);
+          } else if (untar) {
+            candidates.addAll(TarUtil.listTar(pathAttr.getAbsolutePath()));
+          } else if (!tar) {
+            candidates.add(pathAttr);
+          }
+        }
+        processFiles(candidates, requests);
+
+        if (scanCheckpoint != null) {
+          if (snapshot != null && count >= snapshotFound) {
+            // Everything found in the completed directories is processed, once it is sent they are done.
+            sendRequests(requests);
+            saveScanCheckpoint(snapshot);
+            snapshot = null;
+          }
+          if (snapshot == null && System.currentTimeMillis() >= nextCheckpoint) {
+            snapshot = scanCheckpoint.snapshot();
+            snapshotFound = found.get();
+            nextCheckpoint = System.currentTimeMillis() + checkpointMillis;
+          }
+        }
+      }
+    } finally {
+      sendRequests(requests);
+      // Stop the scanner if processing failed, it may be waiting on the full queue.
+      cancelled.set(true);
+      queue.clear();
+      scanner.join();
+    }
+    if (scanError.get() != null) {
+      if (scanCheckpoint != null) {
+        // What the scan found before it failed is processed, so the next run continues from here.
+        List<String> completed = scanCheckpoint.snapshot();
+        if (count >= found.get()) saveScanCheckpoint(completed);
+      }
+      throw new Exception("Failed to scan directory: " + syncBaseDir, scanError.get());
+    }
+    if (scanCheckpoint != null) {
+      try {
+        scanCheckpoint.delete();
+      } catch (IOException e) {
+        logger.warn("[Scheduler] Failed to delete the scan checkpoint of runID: {}", runId, e);
+      }
+    }
+    logger.info("[Scheduler] Streamed {} files/folders from the scan for runID: {}", count, runId);
+  }
+
+  private void saveScanCheckpoint(List<String> completed) {
+    try {
+      scanCheckpoint.save(completed);
+    } catch (IOException e) {
+      logger.warn("[Scheduler] Failed to save the scan checkpoint of runID: {}", runId, e);
+    }
+  }
+
+  /**
+   * Waits for room in the queue. The scanning threads may be pool threads, so the wait is polled
+   * rather than interrupted when processing stops.
+   *
+   * @return false if processing stopped before the entry could be added
+   */
+  private static boolean handOver(BlockingQueue<HpcPathAttributes> queue, HpcPathAttributes pathAttr,
+      AtomicBoolean cancelled) {
+    try {
+      while (!queue.offer(pathAttr, 1, TimeUnit.SECONDS)) {
+        if (cancelled.get()) return false;
+      }
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  /**
+   * Checks whether a folder found by the scan should be processed. Folders that are empty or cannot
+   * be listed are skipped, and so are non leaf folders when a depth of -1 is specified. The folder
+   * is only listed again if the scan did not record its contents.
+   */
+  private boolean isFolderToProcess(HpcPathAttributes pathAttr) throws IOException {
+    //If depth of -1 is specified, skip if it is not a leaf folder
+    if (tar && depth.equals("-1") && skipIfNotLeafFolder) {
+      if (pathAttr.getHasSubdirectories() != null) {
+        if (pathAttr.getHasSubdirectories())
+          return false;
+      } else {
+        try(Stream<Path> stream = Files.list(Paths.get(pathAttr.getAbsolutePath()))) {
+         if(stream.anyMatch(x -> x.toFile().isDirectory()))
+            return false;
+        }
+      }
+    }
+	// Only add the folder if the folder is not empty.
+	Integer childCount = pathAttr.getChildCount();
+	if (childCount == null) {
+		String[] children = new File(pathAttr.getAbsolutePath()).list();
+		if (children != null)
+			childCount = children.length;
+	}
+	if (childCount == null) {
+		logger.warn("[Scheduler] Unable to list files in the Folder {}. It may be unreadable or inaccessible.",
+				pathAttr.getAbsolutePath());
+	} else if (childCount > 0) {
+		return true;
+	} else {
+		logger.info("[Scheduler] There are no files in the Folder  {}", pathAttr.getAbsolutePath());
+	}
+	return false;
+  }
+
+  /**
+   * Checks the set of completed paths for the file the way the symbolic link and the default
+   * status lookups do, by source file path for a link and by original file path.
+   */
+  private boolean isKnownCompleted(HpcPathAttributes file, Path fileFullPath) {
+    if (completedPaths == null || fileFullPath == null) {
+      return false;
+    }
+    if (Files.isSymbolicLink(fileFullPath)
+        && completedPaths.containsSourceFilePath(
+            PathUtil.resolveSourceFilePath(fileFullPath.toString()))) {
+      return true;
+    }
+    return completedPaths.containsOriginalFilePath(file.getAbsolutePath());
+  }
+
   private List<HpcPathAttributes> queryDataObjectsForSoftlinkCreation() throws HpcException, IOException {
     List<HpcPathAttributes> result = new ArrayList<>();
     Path filePath = Paths.get(sourceSoftlinkFile);
@@ -622,18 +1235,86 @@ public class DmeSyncScheduler {
   }
 
   private void processFiles(List<HpcPathAttributes> files) throws Exception {
+    List<StatusInfo> requests = new ArrayList<>();
+    try {
+      processFiles(files, requests);
+    } finally {
+      sendRequests(requests);
+    }
+  }
+
+  private void processFiles(List<HpcPathAttributes> files, List<StatusInfo> requests)
+      throws Exception {
+    ExecutorService executor = eligibilityExecutor;
+    if (executor == null || files.size() < 2) {
+      for (HpcPathAttributes file : files) {
+        enqueueAll(requests, checkFile(file));
+      }
+      return;
+    }
+    Map<String, String> mdc = MDC.getCopyOfContextMap();
+    Deque<Future<List<StatusInfo>>> pending = new ArrayDeque<>();
+    try {
+      for (HpcPathAttributes file : files) {
+        pending.add(executor.submit(() -> {
+          if (mdc != null) MDC.setContextMap(mdc);
+          try {
+            return checkFile(file);
+          } finally {
+            MDC.clear();
+          }
+        }));
+        // Only a few files are checked ahead of the one to enqueue next.
+        if (pending.size() >= eligibilityThreads * 4) {
+          enqueueAll(requests, nextChecked(pending));
+        }
+      }
+      while (!pending.isEmpty()) {
+        enqueueAll(requests, nextChecked(pending));
+      }
+    } finally {
+      // After a failure the files that are not checked yet are left out.
+      for (Future<List<StatusInfo>> future : pending) {
+        future.cancel(false);
+      }
+    }
+  }
+
+  /** Waits for the check of the first pending file, passing on the exception it failed with. */
+  private static List<StatusInfo> nextChecked(Deque<Future<List<StatusInfo>>> pending)
+      throws Exception {
+    try {
+      return pending.poll().get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception) throw (Exception) e.getCause();
+      throw e;
+    }
+  }
 
-    for (HpcPathAttributes file : files) {
+  private void enqueueAll(List<StatusInfo> requests, List<StatusInfo> statusInfos) {
+    for (StatusInfo statusInfo : statusInfos) {
+      enqueue(requests, statusInfo);
+    }
+  }
 
-      StatusInfo statusInfo = null;
+  /**
+   * Checks whether the file is to be archived, or uploaded again, the way the run is configured.
+   * May be called from several eligibility threads at once.
+   *
+   * @return the objects to enqueue for the file, a new object is not saved yet
+   */
+  private List<StatusInfo> checkFile(HpcPathAttributes file) throws Exception {
+    List<StatusInfo> requests = new ArrayList<>();
+
+    StatusInfo statusInfo = null;
 		Path fileFullPath = file.getAbsolutePath() != null ? Paths.get(file.getAbsolutePath()) : null;
-      //If we need to verify previous upload, check
-      if ("local".equals(verifyPrevUpload)) {
-        // Checks the local db to see if it has been completed
-        if (untar) {
-          statusInfo =
-              dmeSyncWorkflowService.getService(access).findFirstStatusInfoByOriginalFilePathAndSourceFileNameAndStatus(
-                  file.getAbsolutePath(), file.getTarEntry(), "COMPLETED");
+    //If we need to verify previous upload, check
+    if ("local".equals(verifyPrevUpload)) {
+      // Checks the local db to see if it has been completed
+      if (untar) {
+        statusInfo =
+            dmeSyncWorkflowService.getService(access).findFirstStatusInfoByOriginalFilePathAndSourceFileNameAndStatus(
+                file.getAbsolutePath(), file.getTarEntry(), "COMPLETED");
 		} else if ( processMultpleTars && 
 				   TarUtil.matchesAnyMultipleTarFolder( multpleTarsFolders , file.getName() )) {
 			logger.info("checking if all the Multiple Tars got uploaded {}",file.getAbsolutePath());
@@ -650,29 +1331,15 @@ public class DmeSyncScheduler {
 						.filter(c -> !WorkflowConstants.isCompletedStatus(c.getStatus()))
 						.collect(Collectors.toList());
 				if (!statusInfoNotCompletedList.isEmpty() || ((statusInfo!=null && statusInfo.getTarContentsCount()>0))) {
-					// use the same status Info rows with new Run Id for reupload
-					for (StatusInfo object : statusInfoNotCompletedList) {
-						if (object != null) {
-							// Update the run_id and reset the retry count and errors
-							object.setRunId(runId);
-							object.setStatus(null);
-							object.setError("");
-							object.setRetryCount(0L);
-							object.setEndWorkflow(false);
-							object = dmeSyncWorkflowService.getService(access).saveStatusInfo(object);
-							// Delete the metadata info created for this object ID
-							dmeSyncWorkflowService.getService(access).deleteMetadataInfoByObjectId(object.getId());
-						}
+					// use the same status Info rows with new Run Id for reupload, they are uploaded by the folder object
+					resetForReattempt(statusInfoNotCompletedList);
+					if (statusInfo != null) {
+						// if all the records are not completed send the original Folder object Id to JMS queue.
+						dmeSyncWorkflowService.getService(access).deleteTaskInfoByObjectId(statusInfo.getId());
+						// Send the incomplete objectId to the message queue for processing
+						requests.addAll(resetForReattempt(Collections.singletonList(statusInfo)));
 					}
-					// if all the records are not completed send the original Folder object Id to JMS queue.
-					dmeSyncWorkflowService.getService(access).deleteTaskInfoByObjectId(statusInfo.getId());
-					// Send the incomplete objectId to the message queue for processing
-					DmeSyncMessageDto message = new DmeSyncMessageDto();
-					prepareForReattempt(statusInfo);
-					statusInfo = dmeSyncWorkflowService.getService(access).saveStatusInfo(statusInfo);
-					message.setObjectId(statusInfo.getId());
-					sender.send(message, "inbound.queue");
-					continue;
+					return requests;
 
 				} else {
 					// if all the records are completed no rerun needed.
@@ -718,21 +1385,17 @@ public class DmeSyncScheduler {
 
 					if (tarRecord != null && !StringUtils.equals(tarRecord.getStatus(), WorkflowConstants.COMPLETED)) {
 						// Tar folder is not uploaded - enqueue tar folder row to JMS
-						sendRequestToJms(tarRecord);
-						continue;
+						requests.addAll(resetForReattempt(Collections.singletonList(tarRecord)));
+						return requests;
 					}
 					// Tar completed - enqueue all incomplete contents records
-					List<StatusInfo> tarContentRows = tarFolderRequests.stream()
+					List<StatusInfo> incompleteContentRows = tarFolderRequests.stream()
 							.filter(p -> p.getSourceFilePath().endsWith(WorkflowConstants.tarContentsFileEndswith)
 									|| p.getSourceFilePath().endsWith(WorkflowConstants.tarExcludedContentsFileEndswith))
+							.filter(p -> !WorkflowConstants.COMPLETED.equals(p.getStatus()))
 							.collect(Collectors.toList());
-					// Find the included contents file record
-					for (StatusInfo row : tarContentRows) {
-						if (!WorkflowConstants.COMPLETED.equals(row.getStatus())) {
-							sendRequestToJms(row);
-						}
-					}
-					continue;
+					requests.addAll(resetForReattempt(incompleteContentRows));
+					return requests;
 
 				}
 			}
@@ -744,6 +1407,11 @@ public class DmeSyncScheduler {
 		              dmeSyncWorkflowService.getService(access).findFirstStatusInfoByOriginalFilePathAndSourceFilePathAndStatus(
 		                  file.getAbsolutePath(), file.getPath(), "COMPLETED");
 		}
+		else if (isKnownCompleted(file, fileFullPath)) {
+			// Completed before, the database does not need to be asked.
+			logger.debug("[Scheduler] File has already been uploaded: {}", file.getAbsolutePath());
+			return requests;
+		}
 		else if (fileFullPath!=null && Files.isSymbolicLink(fileFullPath)) {
 			
 			String sourceFilePath = PathUtil.resolveSourceFilePath(fileFullPath.toString());
@@ -758,79 +1426,87 @@ public class DmeSyncScheduler {
 						.findFirstStatusInfoByOriginalFilePathAndStatusIn(fileFullPath.toString(),WorkflowConstants.getNoReRunStatuses());
 			}
 		}
+		else if (priorStatuses != null && priorStatuses.contains(file.getAbsolutePath())) {
+        // Answered from the statuses loaded for the run instead of a query per file.
+        statusInfo = priorStatuses.findNoReRunStatusInfo(file.getAbsolutePath());
+      }
 		else {
-          statusInfo =
-              dmeSyncWorkflowService.getService(access).findFirstStatusInfoByOriginalFilePathAndStatusIn(
-                  file.getAbsolutePath(), WorkflowConstants.getNoReRunStatuses());
+        statusInfo =
+            dmeSyncWorkflowService.getService(access).findFirstStatusInfoByOriginalFilePathAndStatusIn(
+                file.getAbsolutePath(), WorkflowConstants.getNoReRunStatuses());
+      }
+      if (statusInfo != null) {
+        logger.debug(
+            "[Scheduler] File has already been uploaded: {}", statusInfo.getOriginalFilePath());
+        if(!replaceModifiedFiles)
+      	  return requests;
+        
+        Date modifiedTimestamp = file.getUpdatedDate();
+        Date uploadedTimestamp = statusInfo.getUploadStartTimestamp();
+        if(uploadedTimestamp == null || uploadedTimestamp.compareTo(modifiedTimestamp) > 0) {
+      	  //There are some files where uploadedTimestamp is null so ignore these for now.
+      	  //Modified is before the last upload
+      	  return requests;
         }
-        if (statusInfo != null) {
-          logger.debug(
-              "[Scheduler] File has already been uploaded: {}", statusInfo.getOriginalFilePath());
-          if(!replaceModifiedFiles)
-        	  continue;
-          
-          Date modifiedTimestamp = file.getUpdatedDate();
-          Date uploadedTimestamp = statusInfo.getUploadStartTimestamp();
-          if(uploadedTimestamp == null || uploadedTimestamp.compareTo(modifiedTimestamp) > 0) {
-        	  //There are some files where uploadedTimestamp is null so ignore these for now.
-        	  //Modified is before the last upload
-        	  continue;
-          }
-          //Modified after the last upload, so we need to re-upload
-        } else {
-        	
-        	if(createTarContentsFile) {
-        		statusInfo =
-                        dmeSyncWorkflowService.getService(access).findFirstStatusInfoByOriginalFilePathAndSourceFilePathNotEndsWith(
-                            file.getAbsolutePath(),WorkflowConstants.tarContentsFileEndswith);
-        	}
-        	else if(createCollectionSoftlink) {
-   			 logger.debug(
-   		              "[Scheduler] Original filepath : {} , SourceFilePath: {}",  file.getAbsolutePath() , file.getPath());
-   			statusInfo =
-   		              dmeSyncWorkflowService.getService(access).findTopStatusInfoByDocAndSourceFilePathAndOriginalFilePath( doc,
-   		                   file.getPath() , file.getAbsolutePath());
-   		     }
-        	else {
-        		statusInfo =
-                        dmeSyncWorkflowService.getService(access).findFirstStatusInfoByOriginalFilePathOrderByStartTimestampDesc(
-                            file.getAbsolutePath());
-        	}
-          
-          if(statusInfo != null ) {
-
-        	//Update the run_id and reset the retry count and errors
-        	prepareForReattempt(statusInfo);
-        	if(!file.getIsDirectory()) {
-        	statusInfo.setFilesize(file.getSize());
-        	}
-        	statusInfo = dmeSyncWorkflowService.getService(access).saveStatusInfo(statusInfo);
-        	// Delete the metadata info created for this object ID
-        	dmeSyncWorkflowService.getService(access).deleteMetadataInfoByObjectId(statusInfo.getId());
-        	// Send the incomplete objectId to the message queue for processing
-            DmeSyncMessageDto message = new DmeSyncMessageDto();
-            message.setObjectId(statusInfo.getId());
-
-            sender.send(message, "inbound.queue");
-            continue;
-          }
+        //Modified after the last upload, so we need to re-upload
+      } else {
+      	
+      	if(createTarContentsFile) {
+      		statusInfo =
+                      dmeSyncWorkflowService.getService(access).findFirstStatusInfoByOriginalFilePathAndSourceFilePathNotEndsWith(
+                          file.getAbsolutePath(),WorkflowConstants.tarContentsFileEndswith);
+      	}
+      	else if(createCollectionSoftlink) {
+ 			 logger.debug(
+ 		              "[Scheduler] Original filepath : {} , SourceFilePath: {}",  file.getAbsolutePath() , file.getPath());
+ 			statusInfo =
+ 		              dmeSyncWorkflowService.getService(access).findTopStatusInfoByDocAndSourceFilePathAndOriginalFilePath( doc,
+ 		                   file.getPath() , file.getAbsolutePath());
+ 		     }
+      	else if (priorStatuses != null && priorStatuses.contains(file.getAbsolutePath())) {
+      		// Only the latest row is read, by its id.
+      		statusInfo = dmeSyncWorkflowService.getService(access)
+      				.findStatusInfoById(priorStatuses.findLatestId(file.getAbsolutePath())).orElse(null);
+      	}
+      	else {
+      		statusInfo =
+                      dmeSyncWorkflowService.getService(access).findFirstStatusInfoByOriginalFilePathOrderByStartTimestampDesc(
+                          file.getAbsolutePath());
+      	}
+        
+        if(statusInfo != null ) {
+
+      	//Update the run_id and reset the retry count and errors
+      	prepareForReattempt(statusInfo);
+      	if(!file.getIsDirectory()) {
+      	statusInfo.setFilesize(file.getSize());
+      	}
+      	statusInfo.setDirectory(file.getIsDirectory());
+      	statusInfo.setContentSize(file.getContentSize());
+      	statusInfo = dmeSyncWorkflowService.getService(access).saveStatusInfo(statusInfo);
+      	// Delete the metadata info created for this object ID
+      	dmeSyncWorkflowService.getService(access).deleteMetadataInfoByObjectId(statusInfo.getId());
+      	// Send the incomplete objectId to the message queue for processing
+          requests.add(statusInfo);
+          return requests;
         }
-
       }
-      
-      //If file has been modified with in days specified, skip
-      if (!checklastModifiedFileUnderBaseDir && !lastModfiedDays.isEmpty()
-          && daysBetween(file.getUpdatedDate(), new Date()) <= Integer.parseInt(lastModfiedDays)) {
-        logger.info(
-            "[Scheduler] Skipping: {} File/folder has been modified within the last {} days. Last modified date: {}.",
-            file.getAbsolutePath(),
-            lastModfiedDays,
-            file.getUpdatedDate());
-        continue;
-      }
-      
-      //If parent folder has been modified with in days specified, skip
-      
+
+    }
+    
+    //If file has been modified with in days specified, skip
+    if (!checklastModifiedFileUnderBaseDir && !lastModfiedDays.isEmpty()
+        && daysBetween(file.getUpdatedDate(), new Date()) <= Integer.parseInt(lastModfiedDays)) {
+      logger.info(
+          "[Scheduler] Skipping: {} File/folder has been modified within the last {} days. Last modified date: {}.",
+          file.getAbsolutePath(),
+          lastModfiedDays,
+          file.getUpdatedDate());
+      return requests;
+    }
+    
+    //If parent folder has been modified with in days specified, skip
+    
 		if (checklastModifiedFileUnderBaseDir && !lastModfiedDays.isEmpty()) {
 			// Find the directory being archived under the base dir
 			Path baseDirPath = Paths.get(syncBaseDir).toRealPath();
@@ -845,7 +1521,7 @@ public class DmeSyncScheduler {
 				logger.info(
 						"[Scheduler] Skipping: {} folder has been modified within the last {} days for child folder {}. Last modified date: {}.",
 						checkExistFilePath.toAbsolutePath(),lastModfiedDays ,filePath.getFileName(),folderModifiedDate);
-				continue;
+				return requests;
 			}
 		}
 
@@ -854,27 +1530,27 @@ public class DmeSyncScheduler {
 					&& (StringUtils.isNotEmpty(checkExistsFileExt) || StringUtils.isNotEmpty(checkExistsFile))) {
 
 	    Path folder = Paths.get(file.getAbsolutePath());
-        if(!tar) {
-          folder = Paths.get(file.getAbsolutePath()).getParent();
-        }
-        if(StringUtils.isNotEmpty(checkExistsFile)) {
-        	try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder,
-    				path -> path.getFileName().toString().equals(checkExistsFile))) {
-        		if (!stream.iterator().hasNext()) {
-    				String message ="The directory " + folder.toString() + " does not contain file " + checkExistsFile;
-    	            logger.info(
-    	              "[Scheduler] Skipping: {} folder which does not contain the specified file {}.",
-    	              folder.toString(),
-    	              checkExistsFile);
-    	            //TBD: Check if we need to insert record in DB as COMPLETED before sending an email.
-    	            dmeSyncMailServiceFactory.getService(doc).sendMail("WARNING: HPCDME during registration", message);
-    				continue;
-    			}
-        	}  catch (IOException ex) {
+      if(!tar) {
+        folder = Paths.get(file.getAbsolutePath()).getParent();
+      }
+      if(StringUtils.isNotEmpty(checkExistsFile)) {
+      	try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder,
+  				path -> path.getFileName().toString().equals(checkExistsFile))) {
+      		if (!stream.iterator().hasNext()) {
+  				String message ="The directory " + folder.toString() + " does not contain file " + checkExistsFile;
+  	            logger.info(
+  	              "[Scheduler] Skipping: {} folder which does not contain the specified file {}.",
+  	              folder.toString(),
+  	              checkExistsFile);
+  	            //TBD: Check if we need to insert record in DB as COMPLETED before sending an email.
+  	            dmeSyncMailServiceFactory.getService(doc).sendMail("WARNING: HPCDME during registration", message);
+  				return requests;
+  			}
+      	}  catch (IOException ex) {
 	          throw new Exception("Error while listing directory: " + folder.toString(), ex);
 	        }
-        }
-        if(StringUtils.isNotEmpty(checkExistsFileExt)) {
+      }
+      if(StringUtils.isNotEmpty(checkExistsFileExt)) {
 	        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder, path -> path.toString().endsWith("." + checkExistsFileExt))) {
 	
 	          if (!stream.iterator().hasNext()) {
@@ -886,26 +1562,26 @@ public class DmeSyncScheduler {
 	            //Insert record in DB as COMPLETED and send an email.
 	            statusInfo = insertRecordDb(file, true);
 	            dmeSyncMailServiceFactory.getService(doc).sendMail("WARNING: HPCDME during registration", message);
-	            continue;
+	            return requests;
 	          }
 	        }  catch (IOException ex) {
 	          throw new Exception("Error while listing directory: " + file.getAbsolutePath(), ex);
 	        }
-        }
       }
+    }
+    
+    //If folder under the base dir does not contain a specified file for both files and tar, skip
+    if (checkExistsFileUnderBaseDir 
+  		  && (StringUtils.isNotEmpty(checkExistsFileExt) || StringUtils.isNotEmpty(checkExistsFile))) {
       
-      //If folder under the base dir does not contain a specified file for both files and tar, skip
-      if (checkExistsFileUnderBaseDir 
-    		  && (StringUtils.isNotEmpty(checkExistsFileExt) || StringUtils.isNotEmpty(checkExistsFile))) {
-        
-        //Find the directory being archived under the base dir
-        Path baseDirPath = Paths.get(syncBaseDir).toRealPath();
-        Path filePath = Paths.get(file.getAbsolutePath());
-        Path relativePath = baseDirPath.relativize(filePath);
-        Path subPath1 = relativePath.subpath(0, Integer.parseInt(checkExistsFileUnderBaseDirDepth)+1);
-        Path checkExistFilePath = baseDirPath.resolve(subPath1);
-        
-        if(StringUtils.isNotEmpty(checkExistsFile)) {
+      //Find the directory being archived under the base dir
+      Path baseDirPath = Paths.get(syncBaseDir).toRealPath();
+      Path filePath = Paths.get(file.getAbsolutePath());
+      Path relativePath = baseDirPath.relativize(filePath);
+      Path subPath1 = relativePath.subpath(0, Integer.parseInt(checkExistsFileUnderBaseDirDepth)+1);
+      Path checkExistFilePath = baseDirPath.resolve(subPath1);
+      
+      if(StringUtils.isNotEmpty(checkExistsFile)) {
 	        try (DirectoryStream<Path> stream = Files.newDirectoryStream(checkExistFilePath, path -> path.getFileName().toString().equals(checkExistsFile))) {
 	
 	          if (!stream.iterator().hasNext()) {
@@ -913,13 +1589,13 @@ public class DmeSyncScheduler {
 	              "[Scheduler] Skipping: {} Folder to process does not contain the specified file {}.",
 	              checkExistFilePath,
 	              checkExistsFile);
-	            continue;
+	            return requests;
 	          }
 	        }  catch (IOException ex) {
 	          throw new Exception("Error while listing directory: " + checkExistFilePath, ex);
 	        }
-        }
-        if(StringUtils.isNotEmpty(checkExistsFileExt)) {
+      }
+      if(StringUtils.isNotEmpty(checkExistsFileExt)) {
 	        try (DirectoryStream<Path> stream = Files.newDirectoryStream(checkExistFilePath, path -> path.toString().endsWith("." + checkExistsFileExt))) {
 	
 	          if (!stream.iterator().hasNext()) {
@@ -927,26 +1603,26 @@ public class DmeSyncScheduler {
 	              "[Scheduler] Skipping: {} Folder to process does not contain the specified extention {}.",
 	              checkExistFilePath,
 	              checkExistsFileExt);
-	            continue;
+	            return requests;
 	          }
 	        }  catch (IOException ex) {
 	          throw new Exception("Error while listing directory: " + checkExistFilePath, ex);
 	        }
-        }
       }
+    }
+    
+    //If folder under the base dir does contain a non_Archived specified file for both files and tar, skip
+    if (checkExistsFileUnderBaseDir 
+  		  && (StringUtils.isNotEmpty(checkNoArchiveExistsFile) && StringUtils.isNotEmpty(checkArchiveExistsFile))) {
       
-      //If folder under the base dir does contain a non_Archived specified file for both files and tar, skip
-      if (checkExistsFileUnderBaseDir 
-    		  && (StringUtils.isNotEmpty(checkNoArchiveExistsFile) && StringUtils.isNotEmpty(checkArchiveExistsFile))) {
-        
-        //Find the directory being archived under the base dir
-        Path baseDirPath = Paths.get(syncBaseDir).toRealPath();
-        Path filePath = Paths.get(file.getAbsolutePath());
-        Path relativePath = baseDirPath.relativize(filePath);
-        Path subPath1 = relativePath.subpath(0, Integer.parseInt(checkExistsFileUnderBaseDirDepth)+1);
-        Path checkExistFilePath = baseDirPath.resolve(subPath1);
-        
-        if(StringUtils.isNotEmpty(checkNoArchiveExistsFile)) {
+      //Find the directory being archived under the base dir
+      Path baseDirPath = Paths.get(syncBaseDir).toRealPath();
+      Path filePath = Paths.get(file.getAbsolutePath());
+      Path relativePath = baseDirPath.relativize(filePath);
+      Path subPath1 = relativePath.subpath(0, Integer.parseInt(checkExistsFileUnderBaseDirDepth)+1);
+      Path checkExistFilePath = baseDirPath.resolve(subPath1);
+      
+      if(StringUtils.isNotEmpty(checkNoArchiveExistsFile)) {
 	        try (DirectoryStream<Path> stream = Files.newDirectoryStream(checkExistFilePath, path -> path.getFileName().toString().equals(checkNoArchiveExistsFile))) {
 	
 	          if (stream.iterator().hasNext()) {
@@ -959,7 +1635,7 @@ public class DmeSyncScheduler {
 	              );
 	            dmeSyncMailServiceFactory.getService(doc).sendMail("WARNING: HPCDME during registration", message);
 
-	            continue;
+	            return requests;
 	          }else {
 	        	  try (DirectoryStream<Path> streamCheck = Files.newDirectoryStream(checkExistFilePath, path -> path.getFileName().toString().equals(checkArchiveExistsFile))) {
 	  		          String message ="The directory " + file.getAbsolutePath() + " does not contain any " + checkArchiveExistsFile + "file" ;	
@@ -969,32 +1645,120 @@ public class DmeSyncScheduler {
 	    	              checkExistFilePath,
 	    	              checkArchiveExistsFile);
 	    	            dmeSyncMailServiceFactory.getService(doc).sendMail("WARNING: HPCDME during registration", message);
-	    	            continue;
+	    	            return requests;
 	        	  
 	          }
 	        }  catch (IOException ex) {
 	          throw new Exception("Error while listing directory: " + checkExistFilePath, ex);
 	        }
-        }
-      
-        }catch (IOException ex) {
+      }
+    
+      }catch (IOException ex) {
 	          throw new Exception("Error while listing directory: " + checkExistFilePath, ex);
 	        }
-      }
-      }
-      // Insert the record in local DB
-      logger.info("[Scheduler] Including: {}", file.getAbsolutePath());
-      statusInfo = insertRecordDb(file, false);
+    }
+    }
+    // Insert the record in local DB with the rest of the batch
+    logger.info("[Scheduler] Including: {}", file.getAbsolutePath());
+    statusInfo = newStatusInfo(file, false);
 
-      // Send the objectId to the message queue for processing
+    // Send the objectId to the message queue for processing
+    requests.add(statusInfo);
+    return requests;
+  }
+
+  /**
+   * Adds the object to the pending requests, sending them once there are as many as the JMS batch
+   * size. An object that is not saved yet is inserted when the requests are sent.
+   */
+  private void enqueue(List<StatusInfo> requests, StatusInfo statusInfo) {
+    requests.add(statusInfo);
+    if (requests.size() >= jmsBatchSize) {
+      sendRequests(requests);
+    }
+  }
+
+  /**
+   * Inserts the new objects among the pending requests in one batch and sends the requests to the
+   * inbound queue in one transaction, waiting for the admission controller to let them in.
+   */
+  private void sendRequests(List<StatusInfo> requests) {
+    if (requests.isEmpty()) return;
+    List<StatusInfo> newRows = new ArrayList<>();
+    for (StatusInfo statusInfo : requests) {
+      if (statusInfo.getId() == null) newRows.add(statusInfo);
+    }
+    if (!newRows.isEmpty()) {
+      dmeSyncWorkflowService.getService(access).saveAllStatusInfo(newRows);
+    }
+    if (clusterEnabled) {
+      writeWorkItems(requests);
+      return;
+    }
+    List<DmeSyncMessageDto> messages = new ArrayList<>();
+    for (StatusInfo statusInfo : requests) {
+      if (!admissionController.tryAdmit(statusInfo.getId())) {
+        // The objects admitted so far have to be sent before there can be room for more.
+        releaseSkipped(sender.send(messages, "inbound.queue"));
+        messages.clear();
+        admissionController.admit(statusInfo.getId());
+      }
       DmeSyncMessageDto message = new DmeSyncMessageDto();
       message.setObjectId(statusInfo.getId());
+      message.setPriority(getPriority(statusInfo));
+      messages.add(message);
+    }
+    releaseSkipped(sender.send(messages, "inbound.queue"));
+    requests.clear();
+  }
 
-      sender.send(message, "inbound.queue");
+  /** Frees the admission of the objects the producer did not send, they are not received for it. */
+  private void releaseSkipped(List<Long> skipped) {
+    for (Long objectId : skipped) {
+      admissionController.release(objectId);
     }
   }
 
+  /**
+   * Cluster mode: writes the requests to the claim table for the nodes to claim, instead of
+   * sending them to this node's queue. Each node holds back its own claims, so the admission
+   * controller is not used.
+   */
+  private void writeWorkItems(List<StatusInfo> requests) {
+    Timestamp now = Timestamp.from(Instant.now());
+    List<WorkItem> workItems = new ArrayList<>();
+    for (StatusInfo statusInfo : requests) {
+      WorkItem workItem = new WorkItem();
+      workItem.setObjectId(statusInfo.getId());
+      workItem.setDoc(doc);
+      workItem.setPriority(getPriority(statusInfo));
+      workItem.setCreated(now);
+      workItems.add(workItem);
+    }
+    dmeSyncWorkflowService.getService(access).saveAllWorkItems(workItems);
+    requests.clear();
+  }
+
+  /**
+   * The priority of a request by its size. The size recorded for a folder is that of the directory
+   * entry until it is tarred, so a folder goes by the size of the files the scan found in it, or by
+   * the size of the tar an earlier attempt made. A folder of unknown size keeps the default priority.
+   */
+  private Integer getPriority(StatusInfo statusInfo) {
+    // Rows read back for a reattempt do not carry it, with tar they are folders.
+    boolean folder = statusInfo.getDirectory() != null ? statusInfo.getDirectory() : tar;
+    if (!folder)
+      return priorityPolicy.getPriority(statusInfo.getFilesize());
+    if (statusInfo.getContentSize() != null)
+      return priorityPolicy.getPriority(statusInfo.getContentSize());
+    return priorityPolicy.getPriority(statusInfo.getTarEndTimestamp() != null ? statusInfo.getFilesize() : null);
+  }
+
   private StatusInfo insertRecordDb(HpcPathAttributes file, boolean completed){
+    return dmeSyncWorkflowService.getService(access).saveStatusInfo(newStatusInfo(file, completed));
+  }
+
+  private StatusInfo newStatusInfo(HpcPathAttributes file, boolean completed){
     StatusInfo statusInfo = new StatusInfo();
     statusInfo.setRunId(runId);
     statusInfo.setOrginalFileName(file.getName());
@@ -1002,18 +1766,56 @@ public class DmeSyncScheduler {
     statusInfo.setSourceFileName(untar ? file.getTarEntry() : file.getName());
     statusInfo.setSourceFilePath(createCollectionSoftlink ? file.getPath() : PathUtil.resolveSourceFilePath(file.getAbsolutePath()));
     statusInfo.setFilesize(file.getSize());
+    statusInfo.setDirectory(file.getIsDirectory());
+    statusInfo.setContentSize(file.getContentSize());
     statusInfo.setStartTimestamp(new Date());
     statusInfo.setDoc(doc);
     if(completed) {
       statusInfo.setStatus(WorkflowConstants.COMPLETED);
       statusInfo.setError("specified file extension doesn't exist in correct depth");
     }
-    statusInfo = dmeSyncWorkflowService.getService(access).saveStatusInfo(statusInfo);
     return statusInfo;
   }
 
+  @PostConstruct
+  private void registerRunCompletion() {
+    // In cluster mode the objects of the run are processed by every node, so the run is complete
+    // once the claim table has no work items left for the doc, which the claim thread checks.
+    if (clusterEnabled)
+      runTracker.setCompletionListener(() -> workItemClaimer.runWhenDrained(this::checkForCompletedRun));
+    else
+      runTracker.setCompletionListener(this::checkForCompletedRun);
+  }
+
+  /**
+   * Fallback for the run tracker, which does not see a run complete while an object it counts is
+   * never going to finish, such as one whose message went to the dead letter queue or one sent
+   * before a restart. Once the queue is empty and every consumer thread is idle, those objects are
+   * dropped and the run is checked as before the tracker was added. It only polls while a run has
+   * started and not completed.
+   */
   @Scheduled(cron = "0 0/1 * * * ?")
-  public void checkForCompletedRun() {
+  public void pollForCompletedRun() {
+    if (awsFlag || runId != null || !runTracker.hasPendingRun())
+      return;
+    if (sender.getQueueCount("inbound.queue") != 0 || !consumer.isAllThreadsCompleted())
+      return;
+    if (clusterEnabled) {
+      if (dmeSyncWorkflowService.getService(access).countWorkItems(doc) > 0)
+        return;
+      workItemClaimer.runWhenDrained(null);
+    }
+    int dropped = runTracker.clearOutstanding();
+    if (dropped > 0)
+      logger.warn("[Scheduler] Queue is empty with {} objects still outstanding, checking for the completed run", dropped);
+    checkForCompletedRun();
+  }
+
+  /**
+   * Called once the scheduler has finished a run and every object it enqueued has finished, so
+   * the result is sent without polling the queue. The fallback poll may call it at the same time.
+   */
+  public synchronized void checkForCompletedRun() {
 	if(awsFlag) return;
     String currentRunId = null;
     if (shutDownFlag) {
@@ -1057,12 +1859,10 @@ public class DmeSyncScheduler {
     
 
 
-    //Check to make sure scheduler is completed, run has occurred and the queue is empty
+    //Check to make sure no other run has started since and the run has occurred
     if (runId == null
         && currentRunId != null
-        && !currentRunId.isEmpty()
-        && sender.getQueueCount("inbound.queue") == 0
-        && consumer.isAllThreadsCompleted()) {
+        && !currentRunId.isEmpty()) {
     	
 
       //check if the latest export file is generated in log directory
@@ -1071,11 +1871,12 @@ public class DmeSyncScheduler {
       File excel = new File(fileName);
       if (!excel.exists()) {
         //Export and send email for completed run
-        logger.info("checking if scheduler is completed with queue count {} and active threads completed {} ", sender.getQueueCount("inbound.queue"), consumer.isAllThreadsCompleted());
+        logger.info("checking if scheduler is completed with outstanding objects {}, queue count {}, in flight {} and dequeued {} ",
+            runTracker.getOutstandingCount(), sender.getQueueCount("inbound.queue"),
+            sender.getInFlightCount("inbound.queue"), sender.getDequeueCount("inbound.queue"));
         dmeSyncMailServiceFactory.getService(doc).sendResult(currentRunId);
 
         if (shutDownFlag) {
-          logger.info("checking if scheduler is completed with queue count {} and active threads completed {} ", sender.getQueueCount("inbound.queue"), consumer.isAllThreadsCompleted());
           logger.info("[Scheduler] Queue is empty. Shutting down the application.");
           DmeSyncApplication.shutdown();
         }
@@ -1154,18 +1955,42 @@ public class DmeSyncScheduler {
 	    statusInfo.setReattempts(statusInfo.getReattempts() == null ? 1L : statusInfo.getReattempts() + 1);
   }
   
-	private void sendRequestToJms(StatusInfo statusInfo) {
-
-		prepareForReattempt(statusInfo);
-		statusInfo = dmeSyncWorkflowService.getService(access).saveStatusInfo(statusInfo);
-		// Delete the metadata info created for this object ID
-		dmeSyncWorkflowService.getService(access).deleteMetadataInfoByObjectId(statusInfo.getId());
-		// Send the incomplete objectId to the message queue for processing
-		DmeSyncMessageDto message = new DmeSyncMessageDto();
-		message.setObjectId(statusInfo.getId());
+  /**
+   * Resets the rows for a reattempt in this run and deletes their metadata info with set based
+   * statements, then enqueues them.
+   *
+   * @return the number of rows enqueued
+   */
+  private int sendForReattempt(List<StatusInfo> statusInfos, List<StatusInfo> requests) {
+    List<StatusInfo> reattempts = resetForReattempt(statusInfos);
+    for (StatusInfo statusInfo : reattempts) {
+      enqueue(requests, statusInfo);
+    }
+    return reattempts.size();
+  }
 
-		sender.send(message, "inbound.queue");
-	}
+  /**
+   * Resets the rows for a reattempt in this run and deletes their metadata info with set based
+   * statements, without enqueuing them.
+   *
+   * @return the rows reset
+   */
+  private List<StatusInfo> resetForReattempt(List<StatusInfo> statusInfos) {
+    List<StatusInfo> reattempts = new ArrayList<>();
+    List<Long> ids = new ArrayList<>();
+    for (StatusInfo statusInfo : statusInfos) {
+      if (statusInfo != null) {
+        // Keeps the loaded rows in step with the update.
+        prepareForReattempt(statusInfo);
+        reattempts.add(statusInfo);
+        ids.add(statusInfo.getId());
+      }
+    }
+    if (!ids.isEmpty()) {
+      dmeSyncWorkflowService.getService(access).resetStatusInfoForReattempt(ids, runId);
+    }
+    return reattempts;
+  }
 	
 	 private WorkflowRunInfo insertWorkflowRunInfo() {
 		    Timestamp now = Timestamp.from(Instant.now());
@@ -1185,6 +2010,22 @@ public class DmeSyncScheduler {
 		    workflowRunInfo = dmeSyncWorkflowRunLogService.saveWorkflowRunInfo(workflowRunInfo);
 		    return workflowRunInfo;
 	}
+
+	/**
+	 * Marks the row of the run whose scan is being continued as running again.
+	 *
+	 * @return the updated row, or null if the run has none
+	 */
+	private WorkflowRunInfo resumeWorkflowRunInfo() {
+		WorkflowRunInfo workflowRunInfo = dmeSyncWorkflowRunLogService.findFirstByRunIdAndUserId(runId, doc);
+		if (workflowRunInfo == null)
+			return null;
+		workflowRunInfo.setRunLastHeartbeatTimestamp(Timestamp.from(Instant.now()));
+		workflowRunInfo.setRunEndTimestamp(null);
+		workflowRunInfo.setStatus(WorkflowConstants.RunStatus.RUNNING.toString());
+		workflowRunInfo.setErrorMessage(null);
+		return dmeSyncWorkflowRunLogService.saveWorkflowRunInfo(workflowRunInfo);
+	}
 	/**
 	 * Selective scan processing.
 	 *
@@ -1243,7 +2084,7 @@ public class DmeSyncScheduler {
 			// 1. Find folders to TAR
 			for (HpcPathAttributes folder : folders) {
 				Path folderPath = Paths.get(folder.getAbsolutePath()).normalize().toAbsolutePath();
-				if (isFolderToTar(folderPath, tarPatternsMatcher, baseDirPath)) {
+				if (isFolderToTar(folder, folderPath, tarPatternsMatcher, baseDirPath)) {
 					foldersToTar.add(folder);
 					tarredFolderPaths.add(folderPath);
 					logger.info("[Scheduler][SelectiveScan] Tarring folder matched  {}", folderPath);
@@ -1300,7 +2141,8 @@ public class DmeSyncScheduler {
 		logger.info("[Scheduler] Selective Scan mode Completed");
 	}
 
-	private boolean isFolderToTar(Path folder, List<PathMatcher> matchers, Path baseDirPath) {
+	private boolean isFolderToTar(HpcPathAttributes folderAttr, Path folder, List<PathMatcher> matchers,
+			Path baseDirPath) {
 		if (!matchers.isEmpty()) {
 			Path rel = baseDirPath.relativize(folder);
 			String relUnix = rel.toString().replace('\\', '/');
@@ -1311,6 +2153,8 @@ public class DmeSyncScheduler {
 			return false;
 		}
 		// treat as leaf folder if no patterns
+		if (folderAttr.getHasSubdirectories() != null)
+			return !folderAttr.getHasSubdirectories();
 		try (DirectoryStream<Path> ds = Files.newDirectoryStream(folder)) {
 			for (Path p : ds)
 				if (Files.isDirectory(p))
@@ -1343,6 +2187,9 @@ public class DmeSyncScheduler {
 	private List<HpcPathAttributes> collectFilesFromFolders(List<HpcPathAttributes> folders) {
 		List<HpcPathAttributes> files = new ArrayList<>();
 		for (HpcPathAttributes folder : folders) {
+			// Nothing to list if the scan found the folder empty.
+			if (folder.getChildCount() != null && folder.getChildCount() == 0)
+				continue;
 			File[] child = new File(folder.getAbsolutePath()).listFiles();
 			if (child == null)
 				continue;
@@ -1473,23 +2320,10 @@ public class DmeSyncScheduler {
 	      return;
 	    }
 
-	    // 4) Reset + enqueue.
-	    int enqueued = 0;
-	    for (StatusInfo s : toRetry) {
-
-	      prepareForReattempt(s);
-
-	      s = dmeSyncWorkflowService.getService(access).saveStatusInfo(s);
-
-	      //  clear old derived state so rerun is clean.
-	      dmeSyncWorkflowService.getService(access).deleteMetadataInfoByObjectId(s.getId());
-
-	      DmeSyncMessageDto message = new DmeSyncMessageDto();
-	      message.setObjectId(s.getId());
-	      sender.send(message, "inbound.queue");
-
-	      enqueued++;
-	    }
+	    // 4) Reset + enqueue, clearing old derived state so rerun is clean.
+	    List<StatusInfo> requests = new ArrayList<>();
+	    int enqueued = sendForReattempt(toRetry, requests);
+	    sendRequests(requests);
 
 	    logger.info("[Scheduler][PriorRunRetry] Enqueued {} prior-run failure(s) from '{}' into current runId='{}'",
 	        enqueued, previousRunId, runId);
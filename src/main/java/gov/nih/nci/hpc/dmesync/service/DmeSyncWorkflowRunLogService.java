@@ -1,6 +1,7 @@
 package gov.nih.nci.hpc.dmesync.service;
 
 import gov.nih.nci.hpc.dmesync.domain.WorkflowRunInfo;
+import java.sql.Timestamp;
 
 /**
  * DME Sync Workflow Log Service Interface
@@ -48,4 +49,22 @@ public interface DmeSyncWorkflowRunLogService {
 	 * @return updated WorkflowRunInfo information
 	 */
 	public WorkflowRunInfo saveWorkflowRunInfo(WorkflowRunInfo WorkflowRunInfo);
+
+	/**
+	 * Heartbeat of a cluster node: renews the leases of the work items it holds.
+	 *
+	 * @param serverId the server id of the node
+	 * @param leaseExpiration the new lease expiration
+	 * @return the number of leases renewed
+	 */
+	public int renewWorkItemLeases(String serverId, Timestamp leaseExpiration);
+
+	/**
+	 * Releases the work items held by a node, such as on its start, when the ones it held before
+	 * are no longer in its queue.
+	 *
+	 * @param serverId the server id of the node
+	 * @return the number of work items released
+	 */
+	public int releaseWorkItemLeases(String serverId);
 }
@@ -1,5 +1,6 @@
 package gov.nih.nci.hpc.dmesync.service;
 
+import java.sql.Timestamp;
 import java.util.List;
 import java.util.Optional;
 import gov.nih.nci.hpc.dmesync.domain.CollectionNameMapping;
@@ -8,6 +9,9 @@ import gov.nih.nci.hpc.dmesync.domain.MetadataMapping;
 import gov.nih.nci.hpc.dmesync.domain.PermissionBookmarkInfo;
 import gov.nih.nci.hpc.dmesync.domain.StatusInfo;
 import gov.nih.nci.hpc.dmesync.domain.TaskInfo;
+import gov.nih.nci.hpc.dmesync.domain.WorkItem;
+import gov.nih.nci.hpc.dmesync.util.CompletedPathSet;
+import gov.nih.nci.hpc.dmesync.util.PriorStatusIndex;
 
 /**
  * DME Sync Workflow Service Interface
@@ -218,6 +222,15 @@ public interface DmeSyncWorkflowService {
    */
   void deleteMetadataInfoByObjectId(Long objectId);
 
+  /**
+   * Resets the StatusInfo rows for a reattempt in the run and deletes their metadata info, with
+   * one update and one delete for up to 1000 ids
+   *
+   * @param ids the StatusInfo ids
+   * @param runId the run id
+   */
+  void resetStatusInfoForReattempt(List<Long> ids, String runId);
+
   /**
    * findAllMetadataInfoByRunIdAndDoc
    *
@@ -274,6 +287,13 @@ public interface DmeSyncWorkflowService {
    * @return StatusInfo
    */
   StatusInfo saveStatusInfo(StatusInfo statusInfo);
+
+  /**
+   * Saves the StatusInfo objects in one batch
+   * @param statusInfos the StatusInfo objects
+   * @return the saved StatusInfo objects
+   */
+  List<StatusInfo> saveAllStatusInfo(List<StatusInfo> statusInfos);
   
   /**
    * findFirstTaskInfoByObjectIdAndTaskName
@@ -283,6 +303,13 @@ public interface DmeSyncWorkflowService {
    */
   TaskInfo findFirstTaskInfoByObjectIdAndTaskName(Long id, String taskName);
 
+  /**
+   * findAllTaskInfoByObjectId
+   * @param objectId the object id
+   * @return the TaskInfo rows of the object
+   */
+  List<TaskInfo> findAllTaskInfoByObjectId(Long objectId);
+
   /**
    * deleteTaskInfoByObjectId
    * @param objectId the object id
@@ -301,6 +328,12 @@ public interface DmeSyncWorkflowService {
    */
   void saveMetadataInfo(MetadataInfo metadataInfo);
 
+  /**
+   * Saves the MetadataInfo entries in one batch
+   * @param metadataInfos the metadata info entries
+   */
+  void saveAllMetadataInfo(List<MetadataInfo> metadataInfos);
+
   /**
    * savePermissionBookmarkInfo
    * @param entry permission bookmark entry
@@ -343,4 +376,81 @@ public interface DmeSyncWorkflowService {
 		String sourceFilePath);
 
    List<StatusInfo> findByOriginalFilePathAndSourceFilePathEndingWith(String originalFilePath, String sourceFilePath);
+
+   /**
+    * loadPriorStatusIndex
+    *
+    * @param baseDir the base directory
+    * @return the latest statuses of the original file paths under the base directory, read with one query
+    */
+   PriorStatusIndex loadPriorStatusIndex(String baseDir);
+
+   /**
+    * openCompletedPathSet
+    * Opens the set of completed paths kept on disk, building it from the COMPLETED rows of the doc
+    * if its file is missing. Objects completed from then on are added to it.
+    *
+    * @param doc the doc
+    * @return the set, or null if no file is configured
+    */
+   CompletedPathSet openCompletedPathSet(String doc);
+
+   /**
+    * saveAllWorkItems
+    * Writes the objects to the claim table for any node of the cluster to claim. An object that
+    * already has a work item keeps it.
+    *
+    * @param workItems the work items
+    */
+   void saveAllWorkItems(List<WorkItem> workItems);
+
+   /**
+    * claimWorkItems
+    * Claims up to max claimable work items of the doc, skipping the ones another node is claiming.
+    *
+    * @param doc the doc
+    * @param serverId the server id of this node
+    * @param max the maximum number of work items to claim
+    * @param leaseExpiration the lease expiration of the claimed work items
+    * @return the claimed work items
+    */
+   List<WorkItem> claimWorkItems(String doc, String serverId, int max, Timestamp leaseExpiration);
+
+   /**
+    * holdWorkItems
+    * Writes the objects sent to this node's queue, by a task, as work items claimed by this node so
+    * the run is not complete before they are. A work item whose lease has expired, or that has none,
+    * is taken over.
+    *
+    * @param objectIds the StatusInfo ids
+    * @param doc the doc
+    * @param serverId the server id of this node
+    * @param leaseExpiration the lease expiration, null for the outbox of a single node
+    * @return the ids held, the others are held by a node processing them
+    */
+   List<Long> holdWorkItems(List<Long> objectIds, String doc, String serverId, Timestamp leaseExpiration);
+
+   /**
+    * deleteWorkItem
+    * Removes the object from the claim table once its workflow has ended.
+    *
+    * @param objectId the StatusInfo id
+    */
+   void deleteWorkItem(Long objectId);
+
+   /**
+    * findAllWorkItems
+    *
+    * @param doc the doc
+    * @return the work items of the doc not ended yet, highest priority first
+    */
+   List<WorkItem> findAllWorkItems(String doc);
+
+   /**
+    * countWorkItems
+    *
+    * @param doc the doc
+    * @return the number of work items of the doc not ended yet
+    */
+   long countWorkItems(String doc);
 }
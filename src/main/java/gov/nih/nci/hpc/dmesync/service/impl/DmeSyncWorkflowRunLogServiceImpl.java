@@ -7,8 +7,10 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import gov.nih.nci.hpc.dmesync.dao.StatusInfoDao;
+import gov.nih.nci.hpc.dmesync.dao.WorkItemDao;
 import gov.nih.nci.hpc.dmesync.dao.WorkflowRunInfoDao;
 import gov.nih.nci.hpc.dmesync.domain.StatusInfo;
+import gov.nih.nci.hpc.dmesync.domain.WorkItem;
 import gov.nih.nci.hpc.dmesync.domain.WorkflowRunInfo;
 import gov.nih.nci.hpc.dmesync.service.DmeSyncWorkflowRunLogService;
 import gov.nih.nci.hpc.dmesync.util.ExcelUtil;
@@ -33,6 +35,9 @@ public class DmeSyncWorkflowRunLogServiceImpl implements DmeSyncWorkflowRunLogSe
 	@Autowired
 	protected StatusInfoDao<StatusInfo> statusInfoDao;
 
+	@Autowired
+	protected WorkItemDao<WorkItem> workItemDao;
+
 	@Override
 	public WorkflowRunInfo saveWorkflowRunInfo(WorkflowRunInfo workflowRunInfo) {
 		return workflowRunInfoDao.save(workflowRunInfo);
@@ -47,6 +52,16 @@ public class DmeSyncWorkflowRunLogServiceImpl implements DmeSyncWorkflowRunLogSe
 	public void logWorkflowRunStartHeartbeat(Long id) {
 	}
 
+	@Override
+	public int renewWorkItemLeases(String serverId, Timestamp leaseExpiration) {
+		return workItemDao.renewLeases(serverId, leaseExpiration);
+	}
+
+	@Override
+	public int releaseWorkItemLeases(String serverId) {
+		return workItemDao.releaseLeases(serverId);
+	}
+
 	@Override
 	public void updateWorkflowRunEnd(String runId, String doc, String finalStatus, String errorMessage) {
 		
@@ -1,42 +1,88 @@
 package gov.nih.nci.hpc.dmesync.service.impl;
 
+import java.io.File;
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import gov.nih.nci.hpc.dmesync.dao.CollectionNameMappingDao;
 import gov.nih.nci.hpc.dmesync.dao.MetadataInfoDao;
 import gov.nih.nci.hpc.dmesync.dao.MetadataMappingDao;
 import gov.nih.nci.hpc.dmesync.dao.PermissionBookmarkInfoDao;
 import gov.nih.nci.hpc.dmesync.dao.StatusInfoDao;
 import gov.nih.nci.hpc.dmesync.dao.TaskInfoDao;
+import gov.nih.nci.hpc.dmesync.dao.WorkItemDao;
 import gov.nih.nci.hpc.dmesync.domain.CollectionNameMapping;
 import gov.nih.nci.hpc.dmesync.domain.MetadataInfo;
 import gov.nih.nci.hpc.dmesync.domain.MetadataMapping;
 import gov.nih.nci.hpc.dmesync.domain.PermissionBookmarkInfo;
 import gov.nih.nci.hpc.dmesync.domain.StatusInfo;
 import gov.nih.nci.hpc.dmesync.domain.TaskInfo;
+import gov.nih.nci.hpc.dmesync.domain.WorkItem;
 import gov.nih.nci.hpc.dmesync.service.DmeSyncWorkflowService;
+import gov.nih.nci.hpc.dmesync.util.CompletedPathSet;
+import gov.nih.nci.hpc.dmesync.util.PriorStatusIndex;
 import gov.nih.nci.hpc.dmesync.util.WorkflowConstants;
 
 @Service("local")
 @Transactional
 public class DmeSyncWorkflowServiceImpl implements DmeSyncWorkflowService {
 
+  private static final Logger logger = LoggerFactory.getLogger(DmeSyncWorkflowServiceImpl.class);
+
   @Autowired protected StatusInfoDao<StatusInfo> statusInfoDao;
   @Autowired protected MetadataInfoDao<MetadataInfo> metadataInfoDao;
   @Autowired protected TaskInfoDao<TaskInfo> taskInfoDao;
   @Autowired protected MetadataMappingDao<MetadataMapping> metadataMappingDao;
   @Autowired protected CollectionNameMappingDao<CollectionNameMapping> collectionNameMappingDao;
   @Autowired protected PermissionBookmarkInfoDao<PermissionBookmarkInfo> permissionBookmarkInfoDao;
+  @Autowired protected WorkItemDao<WorkItem> workItemDao;
+
+  @Value("${dmesync.completed.paths.file:}")
+  private String completedPathsFile;
+
+  private volatile CompletedPathSet completedPaths;
 
   @Override
   public void completeWorkflow(StatusInfo statusInfo) {
     statusInfo.setEndTimestamp(new Date());
     statusInfoDao.saveAndFlush(statusInfo);
     taskInfoDao.deleteByObjectId(statusInfo.getId());
+    recordCompletedPaths(statusInfo);
+  }
+
+  /** Adds the paths of a completed object to the completed path set once the transaction commits. */
+  private void recordCompletedPaths(StatusInfo statusInfo) {
+    CompletedPathSet set = completedPaths;
+    if (set == null || !WorkflowConstants.COMPLETED.equals(statusInfo.getStatus())) return;
+    String originalFilePath = statusInfo.getOriginalFilePath();
+    String sourceFilePath = statusInfo.getSourceFilePath();
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(
+          new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+              set.add(originalFilePath, sourceFilePath);
+            }
+          });
+    } else {
+      set.add(originalFilePath, sourceFilePath);
+    }
   }
 
   @Override
@@ -185,6 +231,16 @@ public class DmeSyncWorkflowServiceImpl implements DmeSyncWorkflowService {
     metadataInfoDao.deleteByObjectId(objectId);
   }
 
+  @Override
+  public void resetStatusInfoForReattempt(List<Long> ids, String runId) {
+    // Oracle takes up to 1000 expressions in an in list.
+    for (int from = 0; from < ids.size(); from += 1000) {
+      List<Long> chunk = ids.subList(from, Math.min(from + 1000, ids.size()));
+      statusInfoDao.resetForReattemptByIds(chunk, runId);
+      metadataInfoDao.deleteByObjectIds(chunk);
+    }
+  }
+
   @Override
   public List<MetadataInfo> findAllMetadataInfoByRunIdAndDoc(String runId, String doc) {
     return metadataInfoDao.findAllByRunIdAndDoc(runId, doc);
@@ -204,6 +260,11 @@ public class DmeSyncWorkflowServiceImpl implements DmeSyncWorkflowService {
   public StatusInfo saveStatusInfo(StatusInfo statusInfo) {
     return statusInfoDao.save(statusInfo);
   }
+
+  @Override
+  public List<StatusInfo> saveAllStatusInfo(List<StatusInfo> statusInfos) {
+    return statusInfoDao.saveAll(statusInfos);
+  }
   
   @Override
    public void deleteStatusInfoByIds(List<Long> ids) {
@@ -216,6 +277,11 @@ public class DmeSyncWorkflowServiceImpl implements DmeSyncWorkflowService {
     return taskInfoDao.findFirstByObjectIdAndTaskName(id, taskName);
   }
 
+  @Override
+  public List<TaskInfo> findAllTaskInfoByObjectId(Long objectId) {
+    return taskInfoDao.findByObjectIdOrderByIdAsc(objectId);
+  }
+
   @Override
   public void deleteTaskInfoByObjectId(Long objectId) {
     taskInfoDao.deleteByObjectId(objectId);
@@ -231,6 +297,11 @@ public class DmeSyncWorkflowServiceImpl implements DmeSyncWorkflowService {
     metadataInfoDao.save(metadataInfo);
   }
 
+  @Override
+  public void saveAllMetadataInfo(List<MetadataInfo> metadataInfos) {
+    metadataInfoDao.saveAll(metadataInfos);
+  }
+
   @Override
   public void savePermissionBookmarkInfo(PermissionBookmarkInfo entry) {
     permissionBookmarkInfoDao.save(entry);
@@ -271,4 +342,111 @@ public class DmeSyncWorkflowServiceImpl implements DmeSyncWorkflowService {
   public List<StatusInfo> findStatusInfoByDocAndStatus(String doc, String status) {
 	return statusInfoDao.findStatusInfoByDocAndStatus(doc, status);
   }
+
+  @Override
+  @Transactional(readOnly = true)
+  public PriorStatusIndex loadPriorStatusIndex(String baseDir) {
+    PriorStatusIndex index = new PriorStatusIndex();
+    try (Stream<Object[]> rows = statusInfoDao.streamStatusByOriginalFilePathStartsWith(baseDir)) {
+      rows.forEach(row -> index.add((String) row[0], (Long) row[1], (String) row[2], (Date) row[3], (Date) row[4]));
+    }
+    return index;
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public synchronized CompletedPathSet openCompletedPathSet(String doc) {
+    if (completedPaths != null || completedPathsFile == null || completedPathsFile.isEmpty())
+      return completedPaths;
+    File file = new File(completedPathsFile);
+    try {
+      CompletedPathSet set = CompletedPathSet.load(file);
+      if (set == null) {
+        long start = System.currentTimeMillis();
+        CompletedPathSet built = new CompletedPathSet(file);
+        try (Stream<Object[]> rows = statusInfoDao.streamCompletedPathsByDoc(doc)) {
+          rows.forEach(row -> built.add((String) row[0], (String) row[1]));
+        }
+        built.save();
+        logger.info("Built the completed path set {} with {} paths in {} ms", file, built.size(),
+            System.currentTimeMillis() - start);
+        set = built;
+      }
+      completedPaths = set;
+    } catch (IOException e) {
+      logger.warn("Failed to open the completed path set {}, completed files will be looked up", file, e);
+    }
+    return completedPaths;
+  }
+
+  @Override
+  public void saveAllWorkItems(List<WorkItem> workItems) {
+    List<Long> objectIds = workItems.stream().map(WorkItem::getObjectId).collect(Collectors.toList());
+    Set<Long> existing = workItemDao.findAllById(objectIds).stream().map(WorkItem::getObjectId)
+        .collect(Collectors.toSet());
+    // An object found again while its work item is waiting or being processed keeps it.
+    workItemDao.saveAll(workItems.stream().filter(w -> !existing.contains(w.getObjectId()))
+        .collect(Collectors.toList()));
+  }
+
+  @Override
+  public List<WorkItem> claimWorkItems(String doc, String serverId, int max, Timestamp leaseExpiration) {
+    List<WorkItem> claimed;
+    // The rows are locked as they are read, so only the ones claimed are held until the commit.
+    try (Stream<WorkItem> claimable = workItemDao.streamClaimable(doc, new Timestamp(System.currentTimeMillis()))) {
+      claimed = claimable.limit(max).collect(Collectors.toList());
+    }
+    for (WorkItem workItem : claimed) {
+      workItem.setClaimedBy(serverId);
+      workItem.setLeaseExpiration(leaseExpiration);
+    }
+    workItemDao.saveAll(claimed);
+    return claimed;
+  }
+
+  @Override
+  public List<Long> holdWorkItems(List<Long> objectIds, String doc, String serverId, Timestamp leaseExpiration) {
+    Map<Long, WorkItem> existing = workItemDao.findAllById(objectIds).stream()
+        .collect(Collectors.toMap(WorkItem::getObjectId, Function.identity()));
+    Timestamp now = new Timestamp(System.currentTimeMillis());
+    List<WorkItem> workItems = new ArrayList<>();
+    List<Long> held = new ArrayList<>();
+    for (Long objectId : objectIds) {
+      WorkItem workItem = existing.get(objectId);
+      if (workItem == null) {
+        workItem = new WorkItem();
+        workItem.setObjectId(objectId);
+        workItem.setDoc(doc);
+        workItem.setCreated(now);
+      } else if (workItem.getLeaseExpiration() != null && !workItem.getLeaseExpiration().before(now)) {
+        // Held by a node that is processing it.
+        continue;
+      }
+      // A work item whose lease is gone, such as one left by a message that went to the dead letter
+      // queue, is taken over so the object is sent again.
+      workItem.setClaimedBy(serverId);
+      workItem.setLeaseExpiration(leaseExpiration);
+      workItems.add(workItem);
+      held.add(objectId);
+    }
+    workItemDao.saveAll(workItems);
+    return held;
+  }
+
+  @Override
+  public void deleteWorkItem(Long objectId) {
+    workItemDao.deleteWorkItemByObjectId(objectId);
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public List<WorkItem> findAllWorkItems(String doc) {
+    return workItemDao.findAllByDocOrderByPriorityDescObjectIdAsc(doc);
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public long countWorkItems(String doc) {
+    return workItemDao.countByDoc(doc);
+  }
 }
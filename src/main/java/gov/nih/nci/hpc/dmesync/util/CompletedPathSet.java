@@ -0,0 +1,200 @@
+package gov.nih.nci.hpc.dmesync.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Set of the original and source file paths that have a COMPLETED status, kept on disk so the
+ * scheduler can skip the files archived before without querying the database.
+ *
+ * <p>Each path is held as a 128 bit hash, so a few million paths take tens of megabytes and the
+ * chance of a path being taken for another one is negligible. The file is a sequence of the
+ * hashes; the paths completed while the set is open are appended to it. The set only ever holds
+ * paths that were completed, so a path that is not in it still has to be looked up. A status
+ * that is changed from COMPLETED outside of the workflow is not seen, the file has to be deleted
+ * so the set is built from the database again.
+ */
+public class CompletedPathSet {
+
+  private static final Logger logger = LoggerFactory.getLogger(CompletedPathSet.class);
+
+  private static final String ORIGINAL = "original:";
+  private static final String SOURCE = "source:";
+
+  private final File file;
+  // Pairs of longs, 0 0 marks an empty slot.
+  private long[] table = new long[2 * 1024];
+  private int size;
+  private FileChannel appender;
+
+  /**
+   * Creates an empty set that is written to the file once {@link #save()} is called.
+   *
+   * @param file The file holding the set.
+   */
+  public CompletedPathSet(File file) {
+    this.file = file;
+  }
+
+  /**
+   * Loads the set from its file and appends the paths added from then on to it.
+   *
+   * @param file The file holding the set.
+   * @return The set, or null if the file does not exist.
+   * @throws IOException on IO error
+   */
+  public static CompletedPathSet load(File file) throws IOException {
+    if (!file.isFile()) return null;
+    CompletedPathSet set = new CompletedPathSet(file);
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+      while (true) {
+        long high = in.readLong();
+        long low = in.readLong();
+        set.put(high, low);
+      }
+    } catch (EOFException e) {
+      // A record cut short by a crash is dropped.
+    }
+    set.openAppender();
+    logger.debug("Loaded {} completed paths from {}", set.size, file);
+    return set;
+  }
+
+  /**
+   * Writes the whole set to its file, replacing it, and appends the paths added from then on.
+   *
+   * @throws IOException on IO error
+   */
+  public synchronized void save() throws IOException {
+    Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+    File temp = new File(file.getPath() + ".tmp");
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+      for (int i = 0; i < table.length; i += 2) {
+        if (table[i] == 0 && table[i + 1] == 0) continue;
+        out.writeLong(table[i]);
+        out.writeLong(table[i + 1]);
+      }
+    }
+    Files.move(
+        temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    if (appender != null) appender.close();
+    openAppender();
+    logger.debug("Saved {} completed paths to {}", size, file);
+  }
+
+  private void openAppender() throws IOException {
+    appender = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+  }
+
+  /**
+   * Adds the paths of a completed object.
+   *
+   * @param originalFilePath the original file path, may be null
+   * @param sourceFilePath the source file path, may be null
+   */
+  public synchronized void add(String originalFilePath, String sourceFilePath) {
+    if (originalFilePath != null) add(ORIGINAL + originalFilePath);
+    if (sourceFilePath != null) add(SOURCE + sourceFilePath);
+  }
+
+  private void add(String key) {
+    long[] hash = hash(key);
+    if (!put(hash[0], hash[1]) || appender == null) return;
+    try {
+      ByteBuffer record = ByteBuffer.allocate(16);
+      record.putLong(hash[0]).putLong(hash[1]).flip();
+      while (record.hasRemaining()) appender.write(record);
+    } catch (IOException e) {
+      // Only costs a database lookup for the path after a restart.
+      logger.warn("Failed to record completed path in {}", file, e);
+    }
+  }
+
+  /**
+   * @param originalFilePath the original file path
+   * @return true if an object with the original file path was completed
+   */
+  public synchronized boolean containsOriginalFilePath(String originalFilePath) {
+    return contains(ORIGINAL + originalFilePath);
+  }
+
+  /**
+   * @param sourceFilePath the source file path
+   * @return true if an object with the source file path was completed
+   */
+  public synchronized boolean containsSourceFilePath(String sourceFilePath) {
+    return contains(SOURCE + sourceFilePath);
+  }
+
+  /** @return the number of paths in the set */
+  public synchronized int size() {
+    return size;
+  }
+
+  private boolean contains(String key) {
+    long[] hash = hash(key);
+    int mask = table.length / 2 - 1;
+    for (int slot = (int) hash[1] & mask; ; slot = (slot + 1) & mask) {
+      long high = table[2 * slot], low = table[2 * slot + 1];
+      if (high == 0 && low == 0) return false;
+      if (high == hash[0] && low == hash[1]) return true;
+    }
+  }
+
+  /** Returns false if the hash was already in the set. */
+  private boolean put(long high, long low) {
+    if (high == 0 && low == 0) low = 1;
+    if (2 * (size + 1) > table.length / 2) resize();
+    int mask = table.length / 2 - 1;
+    for (int slot = (int) low & mask; ; slot = (slot + 1) & mask) {
+      long h = table[2 * slot], l = table[2 * slot + 1];
+      if (h == 0 && l == 0) {
+        table[2 * slot] = high;
+        table[2 * slot + 1] = low;
+        size++;
+        return true;
+      }
+      if (h == high && l == low) return false;
+    }
+  }
+
+  private void resize() {
+    long[] old = table;
+    table = new long[old.length * 2];
+    size = 0;
+    for (int i = 0; i < old.length; i += 2) {
+      if (old[i] != 0 || old[i + 1] != 0) put(old[i], old[i + 1]);
+    }
+  }
+
+  private static long[] hash(String key) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    ByteBuffer bytes = ByteBuffer.wrap(digest.digest(key.getBytes(StandardCharsets.UTF_8)));
+    long high = bytes.getLong(), low = bytes.getLong();
+    // 0 0 marks an empty slot.
+    if (high == 0 && low == 0) low = 1;
+    return new long[] {high, low};
+  }
+}
@@ -2,18 +2,116 @@ package gov.nih.nci.hpc.dmesync.util;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 class GlobScanner {
 	private final File rootDir;
-	private final List<String> matches = new ArrayList<>(128);
+	private final List<Match> matches;
+	private final int rootPathLength;
+	private final boolean ignoreCase;
+	private final Pattern[] includes;
+	private final Pattern[] excludes;
+	// Excludes of the form "**/xxx", which only ever look at the name of an entry.
+	private final Pattern[] fileNameExcludes;
+	// When set, matches are handed over as they are found instead of being collected.
+	private final Consumer<Match> sink;
+	// When set, listings of directories that have not changed since the last scan are taken from it.
+	private final ScanIndex index;
+	// When set, only entries at exactly the maximum depth are matched.
+	private final boolean exactDepth;
+	// When set, directories completed by an interrupted scan are skipped and the ones this scan completes are marked.
+	private final ScanCheckpoint checkpoint;
+	// When set, subdirectories that cannot be listed are passed to it and skipped instead of failing the scan.
+	private final BiConsumer<File, IOException> listingErrors;
+	// When set, only the entries of these directories and the directories themselves are matched.
+	private final Set<File> scope;
+	// The directories of the scope and their ancestors, the only ones descended into when there is a scope.
+	private final Set<File> scopePath;
 
 	public GlobScanner (File rootDir, List<String> includes, List<String> excludes, boolean ignoreCase, int depth) {
+		this(rootDir, includes, excludes, ignoreCase, depth, 1);
+	}
+
+	public GlobScanner (File rootDir, List<String> includes, List<String> excludes, boolean ignoreCase, int depth,
+		int parallelism) {
+		this(rootDir, includes, excludes, ignoreCase, depth, parallelism, null);
+	}
+
+	public GlobScanner (File rootDir, List<String> includes, List<String> excludes, boolean ignoreCase, int depth,
+		int parallelism, Consumer<Match> sink) {
+		this(rootDir, includes, excludes, ignoreCase, depth, false, parallelism, sink, null);
+	}
+
+	/**
+	 * Scans the directory using the specified number of threads. Directories are not descended into below the depth, if
+	 * it is greater than 0, where the entries of the root directory are at depth 1. With exactDepth set, only the entries
+	 * at that depth are matched, otherwise the entries up to it. With a parallelism greater than 1, subdirectories are
+	 * listed concurrently on a ForkJoinPool, which helps on network filesystems where each listing is latency bound.
+	 * The matches are returned in the same order for any parallelism: depth first, with the entries of each directory
+	 * sorted by name.
+	 * <p>
+	 * Matched directories that are scanned get {@link DirectoryAttributes} with the number of entries they hold.
+	 * <p>
+	 * If a sink is given, each match is passed to it as soon as it is found and {@link #matches()} stays empty. A
+	 * directory that is scanned is passed once its contents have been scanned. The sink
+	 * is called from the scanning threads, so with a parallelism greater than 1 it must be thread safe and the order of
+	 * the matches is not defined.
+	 * <p>
+	 * If an index is given, directories that have not been modified since it recorded them are not listed again and the
+	 * listings seen by this scan are recorded in it.
+	 */
+	public GlobScanner (File rootDir, List<String> includes, List<String> excludes, boolean ignoreCase, int depth,
+		boolean exactDepth, int parallelism, Consumer<Match> sink, ScanIndex index) {
+		this(rootDir, includes, excludes, ignoreCase, depth, exactDepth, parallelism, sink, index, null, null);
+	}
+
+	/**
+	 * Scans the directory like {@link #GlobScanner(File, List, List, boolean, int, boolean, int, Consumer, ScanIndex)}.
+	 * <p>
+	 * If a checkpoint is given, the directories it records as completed are neither matched nor descended into, and each
+	 * directory is marked completed in it once its contents have been scanned and passed to the sink, which is required.
+	 * <p>
+	 * If listingErrors is given, a subdirectory that cannot be listed is passed to it and left out of the scan, it is not
+	 * marked completed. An error listing the root directory still fails the scan.
+	 */
+	public GlobScanner (File rootDir, List<String> includes, List<String> excludes, boolean ignoreCase, int depth,
+		boolean exactDepth, int parallelism, Consumer<Match> sink, ScanIndex index, ScanCheckpoint checkpoint,
+		BiConsumer<File, IOException> listingErrors) {
+		this(rootDir, includes, excludes, ignoreCase, depth, exactDepth, parallelism, sink, index, checkpoint,
+			listingErrors, null);
+	}
+
+	/**
+	 * Scans the directory like
+	 * {@link #GlobScanner(File, List, List, boolean, int, boolean, int, Consumer, ScanIndex, ScanCheckpoint, BiConsumer)}.
+	 * <p>
+	 * If a scope is given, only the directories of the scope and the entries directly in them are matched, and only the
+	 * directories on the way to them are descended into, so the rest of the tree is not listed. The directories of the
+	 * scope have to be canonical. An index would lose the listings of the directories left out, so a scope is not
+	 * combined with an index or a checkpoint.
+	 */
+	public GlobScanner (File rootDir, List<String> includes, List<String> excludes, boolean ignoreCase, int depth,
+		boolean exactDepth, int parallelism, Consumer<Match> sink, ScanIndex index, ScanCheckpoint checkpoint,
+		BiConsumer<File, IOException> listingErrors, Collection<File> scope) {
+		if (scope != null && (index != null || checkpoint != null))
+			throw new IllegalArgumentException("A scope cannot be combined with an index or a checkpoint.");
+		if (checkpoint != null && sink == null) throw new IllegalArgumentException("A checkpoint requires a sink.");
 		if (rootDir == null) throw new IllegalArgumentException("rootDir cannot be null.");
 		if (!rootDir.exists()) throw new IllegalArgumentException("Directory does not exist: " + rootDir);
 		if (!rootDir.isDirectory()) throw new IllegalArgumentException("File must be a directory: " + rootDir);
@@ -23,77 +121,92 @@ class GlobScanner {
 			throw new RuntimeException("OS error determining canonical path: " + rootDir, ex);
 		}
 		this.rootDir = rootDir;
+		this.sink = sink;
+		this.index = index;
+		this.checkpoint = checkpoint;
+		this.listingErrors = listingErrors;
+		this.exactDepth = exactDepth && depth > 0;
+		if (scope == null) {
+			this.scope = null;
+			this.scopePath = null;
+		} else {
+			this.scope = new HashSet<>(scope);
+			this.scopePath = new HashSet<>();
+			for (File dir : scope)
+				for (File ancestor = dir; ancestor != null && scopePath.add(ancestor); ancestor = ancestor.getParentFile())
+					if (ancestor.equals(rootDir)) break;
+		}
+		int length = rootDir.getPath().length();
+		if (!rootDir.getPath().endsWith(File.separator)) length++; // Lose starting slash.
+		this.rootPathLength = length;
 
 		if (includes == null) throw new IllegalArgumentException("includes cannot be null.");
 		if (excludes == null) throw new IllegalArgumentException("excludes cannot be null.");
 
 		if (includes.isEmpty()) includes.add("**");
-		List<Pattern> includePatterns = new ArrayList<>(includes.size());
-		for (String include : includes)
-			includePatterns.add(new Pattern(include, ignoreCase));
-
-		List<Pattern> allExcludePatterns = new ArrayList<>(excludes.size());
-		for (String exclude : excludes)
-			allExcludePatterns.add(new Pattern(exclude, ignoreCase));
-
-		scanDir(rootDir, includePatterns, depth, 1);
-
-		if (!allExcludePatterns.isEmpty()) {
-			// For each file, see if any exclude patterns match.
-			outerLoop:
-			//
-			for (Iterator<String> matchIter = matches.iterator(); matchIter.hasNext();) {
-				String filePath = matchIter.next();
-				List<Pattern> excludePatterns = new ArrayList<>(allExcludePatterns);
-				try {
-					// Shortcut for excludes that are "**/xxx", just check file name.
-					for (Iterator<Pattern> excludeIter = excludePatterns.iterator(); excludeIter.hasNext();) {
-						Pattern exclude = excludeIter.next();
-						if (exclude.values.length == 2 && exclude.values[0].equals("**")) {
-							exclude.incr();
-							String fileName = filePath.substring(filePath.lastIndexOf(File.separatorChar) + 1);
-							if (exclude.matches(fileName)) {
-								matchIter.remove();
-								continue outerLoop;
-							}
-							excludeIter.remove();
-						}
-					}
-					// Get the file names after the root dir.
-					String[] fileNames = filePath.split("\\" + File.separator);
-					for (String fileName : fileNames) {
-						for (Iterator<Pattern> excludeIter = excludePatterns.iterator(); excludeIter.hasNext();) {
-							Pattern exclude = excludeIter.next();
-							if (!exclude.matches(fileName)) {
-								excludeIter.remove();
-								continue;
-							}
-							exclude.incr(fileName);
-							if (exclude.wasFinalMatch()) {
-								// Exclude pattern matched.
-								matchIter.remove();
-								continue outerLoop;
-							}
-						}
-						// Stop processing the file if none of the exclude patterns matched.
-						if (excludePatterns.isEmpty()) continue outerLoop;
-					}
-				} finally {
-					for (Pattern exclude : allExcludePatterns)
-						exclude.reset();
-				}
+		this.ignoreCase = ignoreCase;
+		this.includes = new Pattern[includes.size()];
+		for (int i = 0; i < this.includes.length; i++)
+			this.includes[i] = new Pattern(includes.get(i), ignoreCase);
+
+		// Excludes are evaluated while walking: a directory matched by an exclude is not descended into, since everything
+		// under it would be excluded as well. Only the "**/xxx" excludes are checked per entry and do not prune.
+		List<Pattern> excludePatterns = new ArrayList<>(excludes.size());
+		List<Pattern> fileNamePatterns = new ArrayList<>();
+		for (String exclude : excludes) {
+			Pattern pattern = new Pattern(exclude, ignoreCase);
+			if (pattern.values.length == 2 && pattern.values[0].equals("**"))
+				fileNamePatterns.add(pattern);
+			else
+				excludePatterns.add(pattern);
+		}
+		this.excludes = excludePatterns.toArray(new Pattern[excludePatterns.size()]);
+		this.fileNameExcludes = fileNamePatterns.toArray(new Pattern[fileNamePatterns.size()]);
+
+		// Every walk starts at the first segment of each pattern.
+		int[] includeStates = new int[this.includes.length];
+		int[] excludeStates = new int[this.excludes.length];
+		if (checkpoint != null && checkpoint.isCompleted(rootDir)) {
+			if (index != null) index.keep(rootDir);
+			matches = new ArrayList<>();
+		} else if (parallelism > 1) {
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			try {
+				matches = pool.invoke(new ScanTask(rootDir, readAttributes(rootDir), includeStates, excludeStates, depth, 1,
+					null));
+			} finally {
+				pool.shutdown();
 			}
+		} else {
+			matches = new ArrayList<>(128);
+			if (scanDir(rootDir, readAttributes(rootDir), includeStates, excludeStates, depth, 1, matches, null, null)
+				&& checkpoint != null) checkpoint.completed(rootDir);
 		}
 	}
 
-	private void scanDir (File dir, List<Pattern> includes, int maxDepth, int curDepth) {
-		if (!dir.canRead()) return;
-		if(maxDepth > 0 && maxDepth < curDepth) return;
+	/**
+	 * Scans a directory, adding matches to the output list. When forks is not null, subdirectories are not scanned inline
+	 * but submitted as tasks that are added to forks, together with the output position their matches belong at.
+	 * <p>
+	 * The states give the position of the walk in each include and exclude pattern, -1 for the patterns that no longer
+	 * apply. They are only read, so the caller can reuse the arrays once this returns.
+	 * <p>
+	 * If the directory itself is a match, what the listing shows about its entries is added to the match.
+	 * @return false if the directory could not be read
+	 */
+	private boolean scanDir (File dir, BasicFileAttributes dirAttributes, int[] includeStates, int[] excludeStates,
+		int maxDepth, int curDepth, List<Match> out, List<ScanTask> forks, Match dirMatch) {
+		if (!dir.canRead()) return false;
+		if(maxDepth > 0 && maxDepth < curDepth) return false;
+
+		// The next states of each entry are computed into these, which are reused for every entry of the directory.
+		int[] nextIncludes = new int[includes.length];
+		int[] nextExcludes = new int[excludes.length];
 
 		// See if patterns are specific enough to avoid scanning every file in the directory.
 		boolean scanAll = false;
-		for (Pattern include : includes) {
-			if (include.value.indexOf('*') != -1 || include.value.indexOf('?') != -1) {
+		for (int i = 0; i < includes.length; i++) {
+			if (includeStates[i] != -1 && includes[i].hasWildcard(includeStates[i])) {
 				scanAll = true;
 				break;
 			}
@@ -101,60 +214,263 @@ class GlobScanner {
 
 		if (!scanAll) {
 			// If not scanning all the files, we know exactly which ones to include.
-			List<Pattern> matchingIncludes = new ArrayList<>(1);
-			for (Pattern include : includes) {
-				if (matchingIncludes.isEmpty())
-					matchingIncludes.add(include);
-				else
-					matchingIncludes.set(0, include);
-				process(dir.toPath(), include.value, matchingIncludes, maxDepth, curDepth);
+			for (int i = 0; i < includes.length; i++) {
+				if (includeStates[i] == -1) continue;
+				Arrays.fill(nextIncludes, -1);
+				nextIncludes[i] = includeStates[i];
+				String fileName = includes[i].values[includeStates[i]];
+				process(dir, fileName, fileName, nextIncludes, excludeStates, nextExcludes, maxDepth, curDepth, out,
+					forks);
 			}
 		} else {
-			// Scan every file.
-		    try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir.toPath())) {
-		      for (Path p : (Iterable<Path>) () -> stream.iterator()) {
-		        //System.out.printf("Content of %s with depth %d:%n", p.toAbsolutePath(), curDepth);
-		        String fileName = p.getFileName().toString();
+			// Scan every file, sorted by name so the matches come out in the same order on every run.
+			ScanIndex.Listing listing = index == null ? null : index.listing(dir, dirAttributes);
+			List<String> fileNames;
+			if (listing != null)
+				fileNames = listing.names();
+			else {
+			    try {
+			      fileNames = list(dir);
+			    } catch (IOException ex) {
+			      if (listingErrors == null || dir.equals(rootDir))
+			        throw new RuntimeException("Error while listing directory: " + dir, ex);
+			      // Such as a network filesystem timing out, the directory is left for the next scan.
+			      listingErrors.accept(dir, ex);
+			      return false;
+			    }
+			    Collections.sort(fileNames);
+			}
+			BasicFileAttributes[] fileAttributes = new BasicFileAttributes[fileNames.size()];
+		    for (int i = 0, n = fileNames.size(); i < n; i++) {
+		    	String fileName = fileNames.get(i);
+		    	String name = ignoreCase ? fileName.toLowerCase() : fileName;
 				// Get all include patterns that match.
-				List<Pattern> matchingIncludes = new ArrayList<>(includes.size());
-				for (Pattern include : includes)
-					if (include.matches(fileName)) matchingIncludes.add(include);
-				if (matchingIncludes.isEmpty()) continue;
-				process(dir.toPath(), fileName, matchingIncludes, maxDepth, curDepth);
-		      }
-		    } catch (IOException ex) {
-		      throw new RuntimeException("Error while listing directory: " + dir, ex);
+				boolean matching = false;
+				for (int j = 0; j < includes.length; j++) {
+					int state = includeStates[j];
+					if (state != -1 && includes[j].matches(state, name)) {
+						nextIncludes[j] = state;
+						matching = true;
+					} else
+						nextIncludes[j] = -1;
+				}
+				if (!matching) continue;
+				fileAttributes[i] = process(dir, fileName, name, nextIncludes, excludeStates, nextExcludes, maxDepth,
+					curDepth, out, forks);
+		    }
+		    if (index != null) index.record(dir, dirAttributes, fileNames);
+		    if (dirMatch != null && dirMatch.attributes != null) {
+		    	// Entries whose attributes were not needed leave it open whether there is a subdirectory.
+		    	Boolean hasSubdirectories = Boolean.FALSE;
+		    	for (BasicFileAttributes attributes : fileAttributes) {
+		    		if (attributes == null)
+		    			hasSubdirectories = null;
+		    		else if (attributes.isDirectory()) {
+		    			hasSubdirectories = Boolean.TRUE;
+		    			break;
+		    		}
+		    	}
+		    	dirMatch.attributes = new DirectoryAttributes(dirMatch.attributes, fileNames.size(), hasSubdirectories);
 		    }
 		}
+		return true;
 	}
 
-	private void process (Path path, String fileName, List<Pattern> matchingIncludes, int maxDepth, int curDepth) {
-		// Increment patterns that need to move to the next token.
+	private static List<String> list (File dir) throws IOException {
+		List<String> fileNames = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir.toPath())) {
+			for (Path p : (Iterable<Path>) () -> stream.iterator())
+				fileNames.add(p.getFileName().toString());
+		} catch (DirectoryIteratorException ex) {
+			// Failed while reading the entries rather than opening the directory.
+			throw ex.getCause();
+		}
+		return fileNames;
+	}
+
+	/**
+	 * Matches one directory entry, descending into it if it is a directory.
+	 * @param name the file name, lower cased when ignoring case
+	 * @param states the states of the include patterns that match the entry, advanced in place past the entry
+	 * @param nextExcludes receives the states of the exclude patterns past the entry
+	 * @return the attributes of the entry, or null if they were not needed or could not be read
+	 */
+	private BasicFileAttributes process (File dir, String fileName, String name, int[] states, int[] excludeStates,
+		int[] nextExcludes, int maxDepth, int curDepth, List<Match> out, List<ScanTask> forks) {
+		// Advance the excludes.
+		for (int i = 0; i < excludes.length; i++) {
+			int state = excludeStates[i];
+			nextExcludes[i] = -1;
+			if (state == -1 || !excludes[i].matches(state, name)) continue;
+			int next = excludes[i].next(state, name);
+			// The entry and everything under it is excluded.
+			if (excludes[i].isFinal(next)) return null;
+			nextExcludes[i] = next;
+		}
+		boolean excluded = false;
+		for (Pattern exclude : fileNameExcludes) {
+			if (exclude.matches(1, name)) {
+				excluded = true;
+				break;
+			}
+		}
+
+		// Advance the includes, the ones that are used up are not carried into a subdirectory.
 		boolean isFinalMatch = false;
-		List<Pattern> incrementedPatterns = new ArrayList<>();
-		for (Iterator<Pattern> iter = matchingIncludes.iterator(); iter.hasNext();) {
-			Pattern include = iter.next();
-			if (include.incr(fileName)) {
-				incrementedPatterns.add(include);
-				if (include.isExhausted()) iter.remove();
+		boolean descend = false;
+		boolean belowDepth = maxDepth <= 0 || curDepth < maxDepth;
+		for (int i = 0; i < includes.length; i++) {
+			int state = states[i];
+			if (state == -1) continue;
+			int next = includes[i].next(state, name);
+			if (includes[i].isFinal(next)) isFinalMatch = true;
+			if (includes[i].isExhausted(next) || !belowDepth)
+				next = -1;
+			else
+				descend = true;
+			states[i] = next;
+		}
+
+		// Entries above the depth are only walked through.
+		if (exactDepth && curDepth != maxDepth) isFinalMatch = false;
+
+		File file = new File(dir, fileName);
+		if (scope != null) {
+			if (!scope.contains(dir) && !scope.contains(file)) isFinalMatch = false;
+			if (!scopePath.contains(file)) descend = false;
+		}
+		// Completed before an interruption, its matches have been passed on already.
+		if (checkpoint != null && checkpoint.isCompleted(file)) {
+			if (index != null) index.keep(file);
+			return null;
+		}
+		// Read the attributes at most once per entry, they are kept with the match for the caller.
+		BasicFileAttributes attributes = null;
+		if ((isFinalMatch && !excluded) || descend)
+			attributes = readAttributes(file);
+		Match match = null;
+		if (isFinalMatch && !excluded) {
+			// A directory that is not descended into, such as one at the exact depth, is listed for its entry count.
+			if (!descend && attributes != null && attributes.isDirectory())
+				attributes = listMatchedDirectory(file, attributes);
+			match = new Match(file.getPath().substring(rootPathLength), attributes);
+			if (sink == null) out.add(match);
+		}
+		boolean forked = false;
+		boolean scanned = false;
+		if (descend && attributes != null && attributes.isDirectory()) {
+			if (forks == null)
+				scanned = scanDir(file, attributes, states, nextExcludes, maxDepth, curDepth+1, out, null, match);
+			else {
+				// The state arrays are reused for the next entry, so the task gets its own copies.
+				ScanTask task = new ScanTask(file, attributes, states.clone(), nextExcludes.clone(), maxDepth, curDepth+1,
+					match);
+				task.offset = out.size();
+				task.fork();
+				forks.add(task);
+				forked = true;
 			}
-			if (include.wasFinalMatch()) isFinalMatch = true;
 		}
+		// A forked task passes its directory on itself once it has been scanned.
+		if (match != null && sink != null && !forked) sink.accept(match);
+		if (scanned && checkpoint != null) checkpoint.completed(file);
+		return attributes;
+	}
 
-		File file = new File(path.toFile(), fileName);
-		if (isFinalMatch) {
-			int length = rootDir.getPath().length();
-			if (!rootDir.getPath().endsWith(File.separator)) length++; // Lose starting slash.
-			matches.add(file.getPath().substring(length));
+	/**
+	 * Lists a matched directory the scan does not descend into, taking the listing from the index if the directory is
+	 * unchanged. Whether it has subdirectories is left open, since that would take reading the attributes of every entry.
+	 * @return the attributes together with the entry count, or the attributes alone if the directory cannot be listed
+	 */
+	private BasicFileAttributes listMatchedDirectory (File dir, BasicFileAttributes attributes) {
+		ScanIndex.Listing listing = index == null ? null : index.listing(dir, attributes);
+		List<String> fileNames;
+		if (listing != null)
+			fileNames = listing.names();
+		else {
+			try {
+				fileNames = list(dir);
+			} catch (IOException ex) {
+				// The caller lists it again and reports the error.
+				return attributes;
+			}
+			if (index != null) {
+				Collections.sort(fileNames);
+				index.record(dir, attributes, fileNames);
+			}
 		}
-		if (!matchingIncludes.isEmpty() && file.isDirectory()) scanDir(file, matchingIncludes, maxDepth, curDepth+1);
+		return new DirectoryAttributes(attributes, fileNames.size(), null);
+	}
 
-		// Decrement patterns.
-		for (Pattern include : incrementedPatterns)
-			include.decr();
+	private static BasicFileAttributes readAttributes (File file) {
+		try {
+			return Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+		} catch (IOException ex) {
+			// Does not exist or is not accessible, same as File#isDirectory returning false.
+			return null;
+		}
+	}
+
+	/** Scans one directory and forks a task for each subdirectory to descend into. */
+	private class ScanTask extends RecursiveTask<List<Match>> {
+		private static final long serialVersionUID = 1L;
+
+		private final File dir;
+		private final BasicFileAttributes dirAttributes;
+		private final int[] includeStates;
+		private final int[] excludeStates;
+		private final int maxDepth;
+		private final int curDepth;
+		private final Match match;
+		private int offset;
+
+		ScanTask (File dir, BasicFileAttributes dirAttributes, int[] includeStates, int[] excludeStates, int maxDepth,
+			int curDepth, Match match) {
+			this.dir = dir;
+			this.dirAttributes = dirAttributes;
+			this.includeStates = includeStates;
+			this.excludeStates = excludeStates;
+			this.maxDepth = maxDepth;
+			this.curDepth = curDepth;
+			this.match = match;
+		}
+
+		@Override
+		protected List<Match> compute () {
+			List<Match> local = new ArrayList<>();
+			List<ScanTask> forks = new ArrayList<>();
+			boolean scanned = scanDir(dir, dirAttributes, includeStates, excludeStates, maxDepth, curDepth, local, forks,
+				match);
+			if (match != null && sink != null) sink.accept(match);
+			if (forks.isEmpty()) {
+				if (scanned && checkpoint != null) checkpoint.completed(dir);
+				return local;
+			}
+
+			// Splice each subdirectory's matches in after the entry that forked it.
+			List<Match> result = new ArrayList<>(local.size());
+			int next = 0;
+			for (ScanTask fork : forks) {
+				result.addAll(local.subList(next, fork.offset));
+				next = fork.offset;
+				result.addAll(fork.join());
+			}
+			result.addAll(local.subList(next, local.size()));
+			// Marked once the subdirectories have been scanned as well.
+			if (scanned && checkpoint != null) checkpoint.completed(dir);
+			return result;
+		}
 	}
 
 	public List<String> matches () {
+		List<String> paths = new ArrayList<>(matches.size());
+		for (Match match : matches)
+			paths.add(match.path);
+		return paths;
+	}
+
+	/** Returns the matches together with the attributes read for them while scanning. */
+	public List<Match> entries () {
 		return matches;
 	}
 
@@ -162,52 +478,120 @@ class GlobScanner {
 		return rootDir;
 	}
 
-	static class Pattern {
-		String value;
-		boolean ignoreCase;
-		final String[] values;
+	/** A matched path, relative to the root dir, and its attributes. The attributes are null if they could not be read. */
+	static final class Match {
+		final String path;
+		// Replaced with DirectoryAttributes once a matched directory has been listed.
+		BasicFileAttributes attributes;
 
-		private int index;
+		Match (String path, BasicFileAttributes attributes) {
+			this.path = path;
+			this.attributes = attributes;
+		}
+	}
 
-		Pattern (String pattern, boolean ignoreCase) {
-			this.ignoreCase = ignoreCase;
+	/** The attributes of a directory together with what its listing showed, so callers need not list it again. */
+	static final class DirectoryAttributes implements BasicFileAttributes {
+		private final BasicFileAttributes attributes;
+		final int childCount;
+		// Null if not every entry's attributes were read.
+		final Boolean hasSubdirectories;
+
+		DirectoryAttributes (BasicFileAttributes attributes, int childCount, Boolean hasSubdirectories) {
+			this.attributes = attributes;
+			this.childCount = childCount;
+			this.hasSubdirectories = hasSubdirectories;
+		}
+
+		public FileTime lastModifiedTime () {
+			return attributes.lastModifiedTime();
+		}
 
+		public FileTime lastAccessTime () {
+			return attributes.lastAccessTime();
+		}
+
+		public FileTime creationTime () {
+			return attributes.creationTime();
+		}
+
+		public boolean isRegularFile () {
+			return attributes.isRegularFile();
+		}
+
+		public boolean isDirectory () {
+			return attributes.isDirectory();
+		}
+
+		public boolean isSymbolicLink () {
+			return attributes.isSymbolicLink();
+		}
+
+		public boolean isOther () {
+			return attributes.isOther();
+		}
+
+		public long size () {
+			return attributes.size();
+		}
+
+		public Object fileKey () {
+			return attributes.fileKey();
+		}
+	}
+
+	/**
+	 * A pattern compiled once into its path segments. It holds no walk state, so one instance is shared by every directory
+	 * and thread of a scan. A walk's position in the pattern is an int state, the index of the segment the next path
+	 * entry has to match. A "**" segment is left as soon as an entry matches the segment after it.
+	 */
+	static final class Pattern {
+		final String[] values;
+		private final boolean[] doubleStar;
+		private final boolean[] wildcard;
+
+		Pattern (String pattern, boolean ignoreCase) {
 			pattern = pattern.replace('\\', '/');
 			pattern = pattern.replace("\\*\\*[^/]", "**/*");
 			pattern = pattern.replace("[^/]\\*\\*", "*/**");
 			if (ignoreCase) pattern = pattern.toLowerCase();
 
 			values = pattern.split("/");
-			value = values[0];
+			doubleStar = new boolean[values.length];
+			wildcard = new boolean[values.length];
+			for (int i = 0; i < values.length; i++) {
+				doubleStar[i] = values[i].equals("**");
+				wildcard[i] = values[i].indexOf('*') != -1 || values[i].indexOf('?') != -1;
+			}
 		}
 
-		boolean matches (String fileName) {
-			if (value.equals("**")) return true;
-
-			if (ignoreCase) fileName = fileName.toLowerCase();
+		/** Returns true if the entry matches the segment of the state. The name must be lower cased when ignoring case. */
+		boolean matches (int state, String name) {
+			if (doubleStar[state]) return true;
+			String value = values[state];
 
 			// Shortcut if no wildcards.
-			if (value.indexOf('*') == -1 && value.indexOf('?') == -1) return fileName.equals(value);
+			if (!wildcard[state]) return name.equals(value);
 
 			int i = 0;
 			int j = 0;
-			while (i < fileName.length() && j < value.length() && value.charAt(j) != '*') {
-				if (value.charAt(j) != fileName.charAt(i) && value.charAt(j) != '?') return false;
+			while (i < name.length() && j < value.length() && value.charAt(j) != '*') {
+				if (value.charAt(j) != name.charAt(i) && value.charAt(j) != '?') return false;
 				i++;
 				j++;
 			}
 
 			// If reached end of pattern without finding a * wildcard, the match has to fail if not same length.
-			if (j == value.length()) return fileName.length() == value.length();
+			if (j == value.length()) return name.length() == value.length();
 
 			int cp = 0;
 			int mp = 0;
-			while (i < fileName.length()) {
+			while (i < name.length()) {
 				if (j < value.length() && value.charAt(j) == '*') {
 					if (j++ >= value.length()) return true;
 					mp = j;
 					cp = i + 1;
-				} else if (j < value.length() && (value.charAt(j) == fileName.charAt(i) || value.charAt(j) == '?')) {
+				} else if (j < value.length() && (value.charAt(j) == name.charAt(i) || value.charAt(j) == '?')) {
 					j++;
 					i++;
 				} else {
@@ -223,56 +607,26 @@ class GlobScanner {
 			return j >= value.length();
 		}
 
-		String nextValue () {
-			if (index + 1 == values.length) return null;
-			return values[index + 1];
-		}
-
-		boolean incr (String fileName) {
-			if (value.equals("**")) {
-				if (index == values.length - 1) return false;
-				incr();
-				if (matches(fileName))
-					incr();
-				else {
-					decr();
-					return false;
-				}
-			} else {
-			  incr();
-			}
-			return true;
-		}
-
-		void incr () {
-			index++;
-			if (index >= values.length)
-				value = null;
-			else
-				value = values[index];
-		}
-
-		void decr () {
-			index--;
-			if (index > 0 && values[index - 1].equals("**")) index--;
-			value = values[index];
-		}
-
-		void reset () {
-			index = 0;
-			value = values[0];
+		/** Returns the state after an entry that matches the segment of the state. */
+		int next (int state, String name) {
+			if (!doubleStar[state]) return state + 1;
+			// A trailing "**" matches everything below.
+			if (state == values.length - 1) return state;
+			return matches(state + 1, name) ? state + 2 : state;
 		}
 
-		boolean isExhausted () {
-			return index >= values.length;
+		boolean hasWildcard (int state) {
+			return wildcard[state];
 		}
 
-		boolean isLast () {
-			return index >= values.length - 1;
+		/** Returns true if no further entry can match. */
+		boolean isExhausted (int state) {
+			return state >= values.length;
 		}
 
-		boolean wasFinalMatch () {
-			return isExhausted() || (isLast() && value.equals("**"));
+		/** Returns true if the entries walked to reach the state match the whole pattern. */
+		boolean isFinal (int state) {
+			return isExhausted(state) || (state == values.length - 1 && doubleStar[state]);
 		}
 	}
 
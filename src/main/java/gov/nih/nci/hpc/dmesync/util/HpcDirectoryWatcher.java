@@ -0,0 +1,217 @@
+package gov.nih.nci.hpc.dmesync.util;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches directory trees for created, modified and deleted entries, keeping the time of the last
+ * change of each directory so each one settles on its own. New subdirectories are watched as they
+ * appear. The directories are registered on a thread of the watcher, since registering a large
+ * tree takes as long as walking it; the pending events are collected each time {@link #poll()} is
+ * called.
+ *
+ * <p>Subtrees matched by an exclude pattern are not watched, the patterns being relative to the
+ * root they are under, and neither are directories below the maximum depth.
+ */
+public class HpcDirectoryWatcher implements Closeable {
+
+  private final Logger logger = LoggerFactory.getLogger(this.getClass().getName());
+
+  private final List<Path> roots;
+
+  private final GlobScanner.Pattern[] excludes;
+
+  private final int maxDepth;
+
+  private final WatchService watchService;
+
+  private final ExecutorService registration;
+
+  // Time of the last change of each directory not yet handed out by takeSettled.
+  private final Map<Path, Long> changes = new HashMap<>();
+
+  // Set if a root could not be registered, for example because the watch limit was reached.
+  private volatile IOException registrationFailure;
+
+  /**
+   * Registers every directory under the roots on the registration thread.
+   *
+   * @param roots The directories to watch.
+   * @param excludePatterns The exclude patterns of the scan, or null. The subtrees they exclude as a
+   *     whole are not watched.
+   * @param maxDepth The depth of the deepest directories watched, where the roots are at depth 0,
+   *     or a negative number to watch every depth.
+   * @throws IOException If the watch service could not be created.
+   */
+  public HpcDirectoryWatcher(List<Path> roots, List<String> excludePatterns, int maxDepth)
+      throws IOException {
+    this.roots = new ArrayList<>(roots);
+    this.maxDepth = maxDepth;
+    List<GlobScanner.Pattern> patterns = new ArrayList<>();
+    if (excludePatterns != null) {
+      for (String exclude : excludePatterns) {
+        GlobScanner.Pattern pattern = new GlobScanner.Pattern(exclude, false);
+        // Like the scan, "**/xxx" only drops the entry and does not prune the subtree.
+        if (pattern.values.length == 2 && pattern.values[0].equals("**")) continue;
+        patterns.add(pattern);
+      }
+    }
+    excludes = patterns.toArray(new GlobScanner.Pattern[patterns.size()]);
+    watchService = roots.get(0).getFileSystem().newWatchService();
+    registration =
+        Executors.newSingleThreadExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "dmesync-watch-registration");
+              thread.setDaemon(true);
+              return thread;
+            });
+    for (Path root : this.roots) {
+      registration.execute(
+          () -> {
+            try {
+              registerTree(root, root, false);
+            } catch (IOException e) {
+              registrationFailure = e;
+            }
+          });
+    }
+  }
+
+  /**
+   * Collects the pending events.
+   *
+   * @throws IOException If a root could not be registered, the watcher does not see every change.
+   */
+  public synchronized void poll() throws IOException {
+    if (registrationFailure != null) throw registrationFailure;
+    WatchKey key;
+    while ((key = watchService.poll()) != null) {
+      Path dir = (Path) key.watchable();
+      for (WatchEvent<?> event : key.pollEvents()) {
+        changes.put(dir, System.currentTimeMillis());
+        if (event.kind() == OVERFLOW) {
+          logger.warn("Watch events were lost for {}", dir);
+          continue;
+        }
+        Path child = dir.resolve((Path) event.context());
+        if (event.kind() == ENTRY_CREATE && Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+          Path root = getRoot(child);
+          registration.execute(
+              () -> {
+                try {
+                  // Entries created before it was registered gave no events.
+                  registerTree(root, child, true);
+                } catch (IOException e) {
+                  logger.warn("Unable to watch new directory {}", child, e);
+                }
+              });
+        }
+      }
+      key.reset();
+    }
+  }
+
+  /**
+   * Hands out the directories that changed and have been quiet since, each one once per change.
+   * The directories still changing are kept until they settle.
+   *
+   * @param quietMillis How long a directory has to be without changes.
+   * @return The settled directories.
+   */
+  public synchronized List<Path> takeSettled(long quietMillis) {
+    long settledBefore = System.currentTimeMillis() - quietMillis;
+    List<Path> settled = new ArrayList<>();
+    for (Iterator<Map.Entry<Path, Long>> it = changes.entrySet().iterator(); it.hasNext(); ) {
+      Map.Entry<Path, Long> change = it.next();
+      if (change.getValue() <= settledBefore) {
+        settled.add(change.getKey());
+        it.remove();
+      }
+    }
+    return settled;
+  }
+
+  /** Waits for the directories submitted so far to be registered. */
+  void awaitRegistration() throws InterruptedException, ExecutionException {
+    registration.submit(() -> {}).get();
+  }
+
+  @Override
+  public void close() throws IOException {
+    registration.shutdownNow();
+    watchService.close();
+  }
+
+  private Path getRoot(Path dir) {
+    for (Path root : roots) {
+      if (dir.startsWith(root)) return root;
+    }
+    return dir;
+  }
+
+  private void registerTree(Path root, Path start, boolean changed) throws IOException {
+    Files.walkFileTree(
+        start,
+        new SimpleFileVisitor<Path>() {
+          @Override
+          public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+              throws IOException {
+            int depth = dir.equals(root) ? 0 : root.relativize(dir).getNameCount();
+            if ((maxDepth >= 0 && depth > maxDepth) || isExcluded(root.relativize(dir)))
+              return FileVisitResult.SKIP_SUBTREE;
+            dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            if (changed) {
+              synchronized (HpcDirectoryWatcher.this) {
+                changes.put(dir, System.currentTimeMillis());
+              }
+            }
+            return FileVisitResult.CONTINUE;
+          }
+
+          @Override
+          public FileVisitResult visitFileFailed(Path file, IOException e) {
+            logger.warn("Unable to watch {}", file, e);
+            return FileVisitResult.CONTINUE;
+          }
+        });
+  }
+
+  /** Walks the path relative to the root through the excludes, the way the scan prunes. */
+  private boolean isExcluded(Path relative) {
+    if (relative.toString().isEmpty()) return false;
+    for (GlobScanner.Pattern exclude : excludes) {
+      int state = 0;
+      for (Path segment : relative) {
+        String name = segment.toString();
+        if (!exclude.matches(state, name)) break;
+        state = exclude.next(state, name);
+        if (exclude.isFinal(state)) return true;
+      }
+    }
+    return false;
+  }
+}
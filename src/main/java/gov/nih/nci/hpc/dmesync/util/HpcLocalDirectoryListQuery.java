@@ -14,13 +14,16 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,6 +47,36 @@ public class HpcLocalDirectoryListQuery {
 	// Globus transfer status strings.
 	private final Logger logger = LoggerFactory.getLogger(this.getClass().getName());
 
+	// Number of threads used to list directories during a scan.
+	private final int scanParallelism;
+
+	// Directory holding the scan indexes, null to list every directory on every scan.
+	private final String scanIndexDir;
+
+	// Subdirectories that could not be listed and were left out of the scans.
+	private final List<String> skippedDirectories = Collections.synchronizedList(new ArrayList<>());
+
+	public HpcLocalDirectoryListQuery() {
+		this(1);
+	}
+
+	/**
+	 * @param scanParallelism The number of threads used to list directories, 1 scans on the calling thread.
+	 */
+	public HpcLocalDirectoryListQuery(int scanParallelism) {
+		this(scanParallelism, null);
+	}
+
+	/**
+	 * @param scanParallelism The number of threads used to list directories, 1 scans on the calling thread.
+	 * @param scanIndexDir The directory to keep the scan indexes in. Directories that have not changed since the last
+	 *        completed scan are not listed again. Null or empty lists every directory.
+	 */
+	public HpcLocalDirectoryListQuery(int scanParallelism, String scanIndexDir) {
+		this.scanParallelism = Math.max(1, scanParallelism);
+		this.scanIndexDir = scanIndexDir == null || scanIndexDir.isEmpty() ? null : scanIndexDir;
+	}
+
 	/**
 	 * Get attributes of a file/directory.
 	 * 
@@ -54,16 +87,18 @@ public class HpcLocalDirectoryListQuery {
 	 * @return The list of HpcPathAttributes
 	 * @throws HpcException The exception
 	 */
-	public List<HpcPathAttributes> getPathAttributes(String fileLocation, List<String> excludePattern,
+	public HpcScanResult getPathAttributes(String fileLocation, List<String> excludePattern,
 			List<String> includePattern, int depth) throws HpcException {
-		List<HpcPathAttributes> pathAttributes = new ArrayList<>();
+		HpcScanResult pathAttributes;
 
 		try {
 		    logger.debug("getPathAttributes: fileLocation: {}", fileLocation);
 		    logger.debug("getPathAttributes: excludePattern: {}", excludePattern);
 		    logger.debug("getPathAttributes: includePattern: {}", includePattern);
-			List<File> dirContent = listDirectory(fileLocation, excludePattern, includePattern, depth);
-			getPathAttributes(pathAttributes, dirContent);
+			pathAttributes = new HpcScanResult(new File(fileLocation).getCanonicalPath());
+			scan(fileLocation, excludePattern, includePattern, depth, null, null, pathAttributes::add);
+			pathAttributes.complete();
+			logger.debug("\n{}", genFileSizeDisplayString(pathAttributes.totalSize()));
 		} catch (Exception e) {
 		  logger.error(e.getMessage(), e);
 			throw new HpcException("Failed to get path attributes: " + fileLocation,
@@ -73,6 +108,38 @@ public class HpcLocalDirectoryListQuery {
 		return pathAttributes;
 	}
 
+	/**
+	 * Get attributes of the files/directories in the changed directories only, like
+	 * {@link #getPathAttributes(String, List, List, int)} would find them. The rest of the directory
+	 * is not listed, and the scan index is neither read nor saved.
+	 * 
+	 * @param fileLocation The endpoint/path to check.
+	 * @param excludePattern The exclude pattern
+	 * @param includePattern The include pattern
+	 * @param depth The depth to scan
+	 * @param changedDirectories The canonical directories whose entries are listed, the directories
+	 *     themselves are listed as well
+	 * @return The list of HpcPathAttributes
+	 * @throws HpcException The exception
+	 */
+	public HpcScanResult getChangedPathAttributes(String fileLocation, List<String> excludePattern,
+			List<String> includePattern, int depth, Collection<File> changedDirectories) throws HpcException {
+		HpcScanResult pathAttributes;
+
+		try {
+			pathAttributes = new HpcScanResult(new File(fileLocation).getCanonicalPath());
+			scan(fileLocation, excludePattern, includePattern, depth, null, changedDirectories,
+					pathAttributes::add);
+			pathAttributes.complete();
+		} catch (Exception e) {
+			logger.error(e.getMessage(), e);
+			throw new HpcException("Failed to get path attributes: " + fileLocation,
+					HpcErrorType.DATA_TRANSFER_ERROR, e);
+		}
+
+		return pathAttributes;
+	}
+
 	/**
 	 * Get attributes of a file/directory.
 	 * 
@@ -111,26 +178,30 @@ public class HpcLocalDirectoryListQuery {
 
 		return pathAttributes;
 	}
-	private void getPathAttributes(List<HpcPathAttributes> attributes, List<File> dirContent) {
-		try {
-			if (dirContent != null) {
-				for (File file : dirContent) {
-					HpcPathAttributes pathAttributes = new HpcPathAttributes();
-					pathAttributes.setName(file.getName());
-					pathAttributes.setPath(file.getPath());
-					pathAttributes.setUpdatedDate(new Date(file.lastModified()));
-					pathAttributes.setAbsolutePath(file.getAbsolutePath());
-					pathAttributes.setSize(file.length());
-					if (file.isDirectory())
-						pathAttributes.setIsDirectory(true);
-					attributes.add(pathAttributes);
-				}
-			}
 
-		} catch (Exception e) {
-			// Unexpected error. Eat this.
-			logger.error("Failed to build directory listing", e);
+	private HpcPathAttributes toPathAttributes(File file, BasicFileAttributes fileAttrs) {
+		HpcPathAttributes pathAttributes = new HpcPathAttributes();
+		pathAttributes.setName(file.getName());
+		pathAttributes.setPath(file.getPath());
+		pathAttributes.setAbsolutePath(file.getAbsolutePath());
+		// Use the attributes read during the scan, only stat again if they could not be read then.
+		if (fileAttrs != null) {
+			pathAttributes.setUpdatedDate(new Date(fileAttrs.lastModifiedTime().toMillis()));
+			pathAttributes.setSize(fileAttrs.size());
+			if (fileAttrs.isDirectory())
+				pathAttributes.setIsDirectory(true);
+			if (fileAttrs instanceof GlobScanner.DirectoryAttributes) {
+				GlobScanner.DirectoryAttributes dirAttrs = (GlobScanner.DirectoryAttributes) fileAttrs;
+				pathAttributes.setChildCount(dirAttrs.childCount);
+				pathAttributes.setHasSubdirectories(dirAttrs.hasSubdirectories);
+			}
+		} else {
+			pathAttributes.setUpdatedDate(new Date(file.lastModified()));
+			pathAttributes.setSize(file.length());
+			if (file.isDirectory())
+				pathAttributes.setIsDirectory(true);
 		}
+		return pathAttributes;
 	}
 
 	private List<String> readFileListfromFile(String fileName) throws Exception {
@@ -149,6 +220,80 @@ public class HpcLocalDirectoryListQuery {
 		return patterns;
 	}
 
+	/**
+	 * Scan a directory and pass the attributes of each file/directory to the consumer as soon as it
+	 * is found, instead of returning them once the whole directory has been scanned.
+	 *
+	 * @param fileLocation The directory to scan.
+	 * @param excludePattern The exclude pattern.
+	 * @param includePattern The include pattern.
+	 * @param depth The depth to scan.
+	 * @param consumer Receives the attributes. Called from the scanning threads when the scan
+	 *     parallelism is greater than 1.
+	 * @throws HpcException The exception
+	 */
+	public void streamPathAttributes(String fileLocation, List<String> excludePattern,
+			List<String> includePattern, int depth, Consumer<HpcPathAttributes> consumer) throws HpcException {
+		streamPathAttributes(fileLocation, excludePattern, includePattern, depth, null, consumer);
+	}
+
+	/**
+	 * Scan a directory like {@link #streamPathAttributes(String, List, List, int, Consumer)}, skipping
+	 * the directories completed by an interrupted scan of the same run and marking the ones this scan
+	 * completes.
+	 *
+	 * @param fileLocation The directory to scan.
+	 * @param excludePattern The exclude pattern.
+	 * @param includePattern The include pattern.
+	 * @param depth The depth to scan.
+	 * @param checkpoint The checkpoint of the run, or null to scan every directory.
+	 * @param consumer Receives the attributes.
+	 * @throws HpcException The exception
+	 */
+	public void streamPathAttributes(String fileLocation, List<String> excludePattern,
+			List<String> includePattern, int depth, ScanCheckpoint checkpoint,
+			Consumer<HpcPathAttributes> consumer) throws HpcException {
+		try {
+			scan(fileLocation, excludePattern, includePattern, depth, checkpoint, null, (filePath, attributes) -> {
+				String fileName = filePath.replace("\\", File.separator).replace("/", File.separator);
+				logger.debug("Including: {}", fileName);
+				consumer.accept(toPathAttributes(new File(fileName), attributes));
+			});
+		} catch (RuntimeException e) {
+			logger.error(e.getMessage(), e);
+			throw new HpcException("Failed to get path attributes: " + fileLocation,
+					HpcErrorType.DATA_TRANSFER_ERROR, e);
+		}
+	}
+
+	/**
+	 * Scans a directory, passing each path and the attributes read for it to the action as soon as it is found. A scan
+	 * limited to a scope does not use the scan index.
+	 */
+	private void scan(String fileLocation, List<String> excludePattern, List<String> includePattern,
+			int depth, ScanCheckpoint checkpoint, Collection<File> scope,
+			BiConsumer<String, BasicFileAttributes> action)
+			throws HpcException {
+		File directory = new File(fileLocation);
+		if (!directory.isDirectory()) {
+			logger.debug("Invalid source folder");
+			throw new HpcException("Invalid source folder " + fileLocation,
+					HpcErrorType.DATA_TRANSFER_ERROR);
+		}
+
+		if (includePattern == null || includePattern.isEmpty()) {
+			includePattern = new ArrayList<>();
+			includePattern.add("*");
+			includePattern.add("*/**");
+		}
+
+		ScanIndex index = scanIndexDir == null || scope != null ? null : ScanIndex.load(scanIndexDir, fileLocation);
+		new HpcPaths().parallel(scanParallelism).exactDepth(true).index(index).checkpoint(checkpoint)
+				.listingErrors(this::skipDirectory).scope(scope)
+				.glob(fileLocation, depth, getPatterns(fileLocation, excludePattern, includePattern), action);
+		saveScanIndex(index);
+	}
+
   /**
    * List Directory
    * 
@@ -179,15 +324,15 @@ public class HpcLocalDirectoryListQuery {
 
     long totalSize = 0L;
     HpcPaths paths = getFileList(directoryName, excludePattern, includePattern, depth);
+    List<BasicFileAttributes> scannedAttributes = paths.getAttributes();
+    int index = 0;
     for (String filePath : paths) {
-      if (depth > 0 && depth(Paths.get(directoryName), Paths.get(filePath)) != depth) {
-        continue;
-      }
+      BasicFileAttributes attributes = scannedAttributes.get(index++);
       String fileName = filePath.replace("\\", File.separator).replace(
                                         "/", File.separator);
       logger.debug("Including: {}", fileName);
 		File file = new File(fileName);
-      totalSize += file.length();
+      totalSize += attributes != null ? attributes.size() : file.length();
       resultList.add(file);
     }
     logger.debug("\n{}", genFileSizeDisplayString(totalSize));
@@ -196,7 +341,41 @@ public class HpcLocalDirectoryListQuery {
   }
 
 	private HpcPaths getFileList(String basePath, List<String> excludePatterns, List<String> includePatterns, int depth) {
-		HpcPaths paths = new HpcPaths();
+		ScanIndex index = scanIndexDir == null ? null : ScanIndex.load(scanIndexDir, basePath);
+		// Only the paths at the depth are listed, the scan does not go below it.
+		HpcPaths paths = new HpcPaths().parallel(scanParallelism).exactDepth(true).index(index)
+			.listingErrors(this::skipDirectory);
+		paths.glob(basePath, depth, getPatterns(basePath, excludePatterns, includePatterns));
+		saveScanIndex(index);
+		return paths;
+	}
+
+	/**
+	 * @return The subdirectories that could not be listed and were left out of the scans so far.
+	 */
+	public List<String> getSkippedDirectories() {
+		synchronized (skippedDirectories) {
+			return new ArrayList<>(skippedDirectories);
+		}
+	}
+
+	private void skipDirectory(File dir, IOException e) {
+		logger.warn("Skipping directory that could not be listed: {}", dir, e);
+		skippedDirectories.add(dir.getPath());
+	}
+
+	// Only saved once the scan completed, a failed scan leaves the previous index in place.
+	private void saveScanIndex(ScanIndex index) {
+		if (index == null)
+			return;
+		try {
+			index.save();
+		} catch (IOException e) {
+			logger.warn("Failed to save the scan index, the previous one is kept", e);
+		}
+	}
+
+	private List<String> getPatterns(String basePath, List<String> excludePatterns, List<String> includePatterns) {
 		if (includePatterns == null || includePatterns.isEmpty()) {
 			includePatterns = new ArrayList<>();
 			includePatterns.add("*");
@@ -210,15 +389,8 @@ public class HpcLocalDirectoryListQuery {
 		}
 		patterns.add("!**/hpc*.log/**");
 		logger.debug("basePath {}", basePath);
-		return paths.glob(basePath, depth, patterns);
+		return patterns;
 
 	}
 	
-	//compute depth based on relative path to top directory
-	 private int depth(Path top, Path file) {
-	    Path rp = file.relativize(top);
-	    return (rp.getFileName().toString().equals("")) ? 0 : rp.getNameCount();
-	 }
-	 
-	
 }
@@ -24,6 +24,9 @@ public class HpcPathAttributes implements Serializable, Comparable<HpcPathAttrib
 	protected String absolutePath;
 	protected String name;
 	protected String tarEntry;
+	protected Integer childCount;
+	protected Boolean hasSubdirectories;
+	protected Long contentSize;
 
 	public String getAbsolutePath() {
 		return absolutePath;
@@ -147,6 +150,54 @@ public class HpcPathAttributes implements Serializable, Comparable<HpcPathAttrib
   public void setTarEntry(String tarEntry) {
   this.tarEntry = tarEntry;}
 
+	/**
+	 * Gets the number of entries in the directory, as listed by the scan.
+	 * @return the count, or null if the directory was not listed
+	 */
+	public Integer getChildCount() {
+		return childCount;
+	}
+
+	/**
+	 * Sets the value of the childCount property.
+	 * @param value The value to set
+	 */
+	public void setChildCount(Integer value) {
+		this.childCount = value;
+	}
+
+	/**
+	 * Gets whether the directory holds subdirectories, as listed by the scan.
+	 * @return true of false, or null if it is not known
+	 */
+	public Boolean getHasSubdirectories() {
+		return hasSubdirectories;
+	}
+
+	/**
+	 * Sets the value of the hasSubdirectories property.
+	 * @param value The value to set
+	 */
+	public void setHasSubdirectories(Boolean value) {
+		this.hasSubdirectories = value;
+	}
+
+	/**
+	 * Gets the total size of the files the scan found below the directory.
+	 * @return the size, or null if the scan did not go into the directory
+	 */
+	public Long getContentSize() {
+		return contentSize;
+	}
+
+	/**
+	 * Sets the value of the contentSize property.
+	 * @param value The value to set
+	 */
+	public void setContentSize(Long value) {
+		this.contentSize = value;
+	}
+
   public static final Comparator<HpcPathAttributes> pathComparator = new Comparator<HpcPathAttributes>() {
 
 		public int compare(HpcPathAttributes path1, HpcPathAttributes path2) {
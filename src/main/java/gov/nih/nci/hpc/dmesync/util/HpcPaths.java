@@ -5,13 +5,16 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.channels.FileChannel;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.function.BiConsumer;
 import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -26,7 +29,19 @@ public class HpcPaths implements Iterable<String> {
 
 	private static List<String> defaultGlobExcludes;
 
-	final HashSet<Path> paths = new HashSet<>(32);
+	final LinkedHashSet<Path> paths = new LinkedHashSet<>(32);
+
+	private int scanParallelism = 1;
+
+	private ScanIndex scanIndex;
+
+	private boolean exactDepth;
+
+	private ScanCheckpoint scanCheckpoint;
+
+	private BiConsumer<File, IOException> listingErrors;
+
+	private Collection<File> scope;
 
 	/** Creates an empty Paths object. */
 	public HpcPaths () {
@@ -50,6 +65,61 @@ public class HpcPaths implements Iterable<String> {
 		glob(dir, depth, patterns);
 	}
 
+	/** Sets the number of threads subsequent glob searches use to list directories. 1, the default, scans on the calling
+	 * thread.
+	 * @param parallelism the number of threads
+	 * @return the paths */
+	public HpcPaths parallel (int parallelism) {
+		if (parallelism < 1) throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+		this.scanParallelism = parallelism;
+		return this;
+	}
+
+	/** Sets whether subsequent glob searches with a depth greater than 0 only collect the paths at exactly that depth. By
+	 * default the paths up to the depth are collected. Either way directories below the depth are not scanned.
+	 * @param exactDepth true to only collect the paths at the depth
+	 * @return the paths */
+	public HpcPaths exactDepth (boolean exactDepth) {
+		this.exactDepth = exactDepth;
+		return this;
+	}
+
+	/** Sets the index subsequent glob searches use to skip listing directories that have not changed since it was saved. The
+	 * listings seen by the searches are recorded in the index, which the caller saves once they completed.
+	 * @param index the index, or null to list every directory
+	 * @return the paths */
+	public HpcPaths index (ScanIndex index) {
+		this.scanIndex = index;
+		return this;
+	}
+
+	/** Sets the checkpoint subsequent glob searches that pass each path to an action use to skip the directories completed
+	 * by an interrupted search of the same run, and to mark the ones they complete. The caller saves it.
+	 * @param checkpoint the checkpoint, or null to scan every directory
+	 * @return the paths */
+	public HpcPaths checkpoint (ScanCheckpoint checkpoint) {
+		this.scanCheckpoint = checkpoint;
+		return this;
+	}
+
+	/** Sets what subsequent glob searches do with a subdirectory that cannot be listed: it is passed to the handler and
+	 * left out instead of failing the search.
+	 * @param listingErrors the handler, or null to fail the search
+	 * @return the paths */
+	public HpcPaths listingErrors (BiConsumer<File, IOException> listingErrors) {
+		this.listingErrors = listingErrors;
+		return this;
+	}
+
+	/** Sets the directories subsequent glob searches are limited to: only they and the entries directly in them are
+	 * collected, and the rest of the tree is not listed. It cannot be combined with an index or a checkpoint.
+	 * @param scope the canonical directories, or null to search the whole tree
+	 * @return the paths */
+	public HpcPaths scope (Collection<File> scope) {
+		this.scope = scope;
+		return this;
+	}
+
 	/**
 	 * Creates a GlobScanner with the specified arguments.
 	 * @param dir the directory
@@ -59,6 +129,12 @@ public class HpcPaths implements Iterable<String> {
 	 * @return the paths
 	 */
 	private HpcPaths glob (String dir, boolean ignoreCase, int depth, String... patterns) {
+		return scan(dir, ignoreCase, depth, null, patterns);
+	}
+
+	/** Runs the glob search, adding the matches to this object or, if an action is given, passing them to it. */
+	private HpcPaths scan (String dir, boolean ignoreCase, int depth, BiConsumer<String, BasicFileAttributes> action,
+		String... patterns) {
 		if (dir == null) dir = ".";
 		if (patterns != null && patterns.length == 0) {
 			String[] split = dir.split("\\|");
@@ -86,18 +162,36 @@ public class HpcPaths implements Iterable<String> {
 
 		if (defaultGlobExcludes != null) excludes.addAll(defaultGlobExcludes);
 
-		GlobScanner scanner = new GlobScanner(dirFile, includes, excludes, ignoreCase, depth);
+		if (action != null) {
+			File canonicalDir;
+			try {
+				canonicalDir = dirFile.getCanonicalFile();
+			} catch (IOException ex) {
+				throw new RuntimeException("OS error determining canonical path: " + dirFile, ex);
+			}
+			String rootDir = canonicalDir.getPath().replace('\\', '/');
+			if (!rootDir.endsWith("/")) rootDir += '/';
+			final String root = rootDir;
+			new GlobScanner(dirFile, includes, excludes, ignoreCase, depth, exactDepth, scanParallelism,
+				match -> action.accept(new Path(root, match.path).absolute(), match.attributes), scanIndex, scanCheckpoint,
+				listingErrors, scope);
+			return this;
+		}
+
+		GlobScanner scanner = new GlobScanner(dirFile, includes, excludes, ignoreCase, depth, exactDepth, scanParallelism,
+			null, scanIndex, null, listingErrors, scope);
 		String rootDir = scanner.rootDir().getPath().replace('\\', '/');
 		if (!rootDir.endsWith("/")) rootDir += '/';
-		for (String filePath : scanner.matches())
-			paths.add(new Path(rootDir, filePath));
+		for (GlobScanner.Match match : scanner.entries())
+			paths.add(new Path(rootDir, match.path, match.attributes));
 		return this;
 	}
 
 	/** Collects all files and directories in the specified directory matching the wildcard patterns.
 	 * @param dir The directory containing the paths to collect. If it does not exist, no paths are collected. If null, "." is
 	 *           assumed.
-	 * @param depth the depth
+	 * @param depth The maximum depth of the paths to collect, where the paths directly in dir are at depth 1. Directories
+	 *           below it are not scanned. If 0 or less, all depths are collected. See {@link #exactDepth(boolean)}.
 	 * @param patterns The wildcard patterns of the paths to collect or exclude. Patterns may optionally contain wildcards
 	 *           represented by asterisks and question marks. If empty or omitted then the dir parameter is split on the "|"
 	 *           character, the first element is used as the directory and remaining are used as the patterns. If null, ** is
@@ -143,6 +237,21 @@ public class HpcPaths implements Iterable<String> {
 		return this;
 	}
 
+	/** Case sensitive glob that does not collect the paths. Each matching path is passed to the action with its attributes
+	 * as soon as it is found, so a large tree can be processed while it is still being scanned. With a parallelism greater
+	 * than 1 the action is called from several threads and the order is not defined.
+	 * @see #glob(String, int, String...)
+	 * @param dir the directory
+	 * @param depth the depth
+	 * @param patterns the patterns specified
+	 * @param action receives the absolute path and its attributes, which are null if they could not be read
+	 */
+	public void glob (String dir, int depth, List<String> patterns, BiConsumer<String, BasicFileAttributes> action) {
+		if (patterns == null) throw new IllegalArgumentException("patterns cannot be null.");
+		if (action == null) throw new IllegalArgumentException("action cannot be null.");
+		scan(dir, false, depth, action, patterns.toArray(new String[patterns.size()]));
+	}
+
 	/** Case insensitive glob.
 	 * @see #glob(String, int, String...)
 	 * @param dir the directory
@@ -356,6 +465,17 @@ public class HpcPaths implements Iterable<String> {
 		return stringPaths;
 	}
 
+	/** Returns the attributes read for each path while it was collected, in the same order as {@link #getPaths()}. An entry is
+	 * null if the path was not collected by a glob search or its attributes could not be read.
+	 * @return the attributes
+	 */
+	public List<BasicFileAttributes> getAttributes () {
+		ArrayList<BasicFileAttributes> attributes = new ArrayList<>(paths.size());
+		for (Path path : paths)
+			attributes.add(path.attributes);
+		return attributes;
+	}
+
 	/** Returns the paths' filenames. 
 	 * @return the paths' filenames
 	 */
@@ -439,11 +559,18 @@ public class HpcPaths implements Iterable<String> {
 	private static final class Path {
 		public final String dir;
 		public final String name;
+		/** Not part of equality, null unless read during a glob search. */
+		public final BasicFileAttributes attributes;
 
 		public Path (String dir, String name) {
+			this(dir, name, null);
+		}
+
+		public Path (String dir, String name, BasicFileAttributes attributes) {
 			if (dir.length() > 0 && !dir.endsWith("/")) dir += "/";
 			this.dir = dir;
 			this.name = name;
+			this.attributes = attributes;
 		}
 
 		public String absolute () {
@@ -0,0 +1,359 @@
+package gov.nih.nci.hpc.dmesync.util;
+
+import java.io.File;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+
+/**
+ * Compact store for the paths found by a directory scan.
+ *
+ * <p>Each path is kept as its name and the index of its parent directory, with the size,
+ * modification time and directory details in primitive arrays, so a scan of millions of entries
+ * does not hold a full path string and an {@link HpcPathAttributes} for each of them. The list
+ * hands out a new {@link HpcPathAttributes} view each time an entry is read; changes made to a
+ * view are not kept.
+ *
+ * <p>The entries are ordered as a sequential scan lists them: each directory is followed by its
+ * contents, and the entries of a directory are sorted by name. The order does not depend on the
+ * scan parallelism.
+ */
+public class HpcScanResult extends AbstractList<HpcPathAttributes> implements RandomAccess {
+
+  private static final byte MATCHED = 1;
+  private static final byte DIRECTORY = 2;
+  // Set on the directories the scan found entries in.
+  private static final byte CONTENTS_SCANNED = 4;
+
+  private static final byte SUBDIRECTORIES_UNKNOWN = 0;
+  private static final byte NO_SUBDIRECTORIES = 1;
+  private static final byte HAS_SUBDIRECTORIES = 2;
+
+  // The scanned directories, a node whose parent is negative is directly in root -1 - parent.
+  private final String[] roots;
+
+  // Nodes for the matched entries and the directories above them.
+  private int count;
+  private int[] parents;
+  private String[] names;
+  private byte[] flags;
+  private long[] sizes;
+  private long[] modified;
+  // -1 if the directory was not listed.
+  private int[] childCounts;
+  private byte[] subdirectories;
+  // The total size of the files found below each directory, null until complete is called.
+  private long[] contentSizes;
+
+  // Directory nodes by relative path, only needed while entries are added.
+  private Map<String, Integer> directories = new HashMap<>();
+
+  // The matched nodes in list order, null until complete is called.
+  private int[] order;
+
+  /**
+   * Creates an empty result for a scan.
+   *
+   * @param root The scanned directory. The paths added have to be below it.
+   */
+  HpcScanResult(String root) {
+    roots = new String[] {root.replace("/", File.separator)};
+    int capacity = 64;
+    parents = new int[capacity];
+    names = new String[capacity];
+    flags = new byte[capacity];
+    sizes = new long[capacity];
+    modified = new long[capacity];
+    childCounts = new int[capacity];
+    subdirectories = new byte[capacity];
+  }
+
+  private HpcScanResult(String[] roots, int count, int size) {
+    this.roots = roots;
+    this.count = count;
+    parents = new int[count];
+    names = new String[count];
+    flags = new byte[count];
+    sizes = new long[count];
+    modified = new long[count];
+    childCounts = new int[count];
+    subdirectories = new byte[count];
+    contentSizes = new long[count];
+    directories = null;
+    order = new int[size];
+  }
+
+  private HpcScanResult(HpcScanResult result, int[] order) {
+    roots = result.roots;
+    count = result.count;
+    parents = result.parents;
+    names = result.names;
+    flags = result.flags;
+    sizes = result.sizes;
+    modified = result.modified;
+    childCounts = result.childCounts;
+    subdirectories = result.subdirectories;
+    contentSizes = result.contentSizes;
+    directories = null;
+    this.order = order;
+  }
+
+  /**
+   * Adds a path found by the scan. Can be called from several scanning threads.
+   *
+   * @param path The path, with '/' separating the directories.
+   * @param attributes The attributes read by the scan, or null to read them now.
+   */
+  synchronized void add(String path, BasicFileAttributes attributes) {
+    if (order != null) throw new IllegalStateException("The scan result is complete.");
+    String root = roots[0].replace(File.separator, "/");
+    int start = root.length();
+    while (start < path.length() && path.charAt(start) == '/') start++;
+    if (!path.startsWith(root) || start >= path.length()) return;
+    String relativePath = path.substring(start);
+
+    Integer existing = directories.get(relativePath);
+    int node;
+    if (existing != null) {
+      node = existing;
+    } else {
+      int slash = relativePath.lastIndexOf('/');
+      int parent = slash < 0 ? -1 : directory(relativePath.substring(0, slash));
+      node = newNode(parent, relativePath.substring(slash + 1));
+    }
+
+    flags[node] |= MATCHED;
+    if (attributes != null) {
+      sizes[node] = attributes.size();
+      modified[node] = attributes.lastModifiedTime().toMillis();
+      if (attributes.isDirectory()) flags[node] |= DIRECTORY;
+      if (attributes instanceof GlobScanner.DirectoryAttributes) {
+        GlobScanner.DirectoryAttributes dirAttributes = (GlobScanner.DirectoryAttributes) attributes;
+        childCounts[node] = dirAttributes.childCount;
+        if (dirAttributes.hasSubdirectories != null)
+          subdirectories[node] =
+              dirAttributes.hasSubdirectories ? HAS_SUBDIRECTORIES : NO_SUBDIRECTORIES;
+      }
+    } else {
+      // Only stat again if the attributes could not be read during the scan.
+      File file = new File(roots[0], relativePath);
+      sizes[node] = file.length();
+      modified[node] = file.lastModified();
+      if (file.isDirectory()) flags[node] |= DIRECTORY;
+    }
+    // Entries below a directory can be added before or after the directory itself.
+    if (existing == null && (flags[node] & DIRECTORY) != 0) directories.put(relativePath, node);
+  }
+
+  /** Returns the node of a directory, adding it and the directories above it if needed. */
+  private int directory(String relativePath) {
+    Integer node = directories.get(relativePath);
+    if (node != null) return node;
+    int slash = relativePath.lastIndexOf('/');
+    int parent = slash < 0 ? -1 : directory(relativePath.substring(0, slash));
+    int added = newNode(parent, relativePath.substring(slash + 1));
+    flags[added] = DIRECTORY;
+    directories.put(relativePath, added);
+    return added;
+  }
+
+  private int newNode(int parent, String name) {
+    if (count == parents.length) {
+      int capacity = count * 2;
+      parents = Arrays.copyOf(parents, capacity);
+      names = Arrays.copyOf(names, capacity);
+      flags = Arrays.copyOf(flags, capacity);
+      sizes = Arrays.copyOf(sizes, capacity);
+      modified = Arrays.copyOf(modified, capacity);
+      childCounts = Arrays.copyOf(childCounts, capacity);
+      subdirectories = Arrays.copyOf(subdirectories, capacity);
+    }
+    parents[count] = parent;
+    names[count] = name;
+    childCounts[count] = -1;
+    return count++;
+  }
+
+  /** Orders the entries once all of them have been added and releases what was needed to add them. */
+  synchronized void complete() {
+    if (order != null) return;
+    directories = null;
+    parents = Arrays.copyOf(parents, count);
+    names = Arrays.copyOf(names, count);
+    flags = Arrays.copyOf(flags, count);
+    sizes = Arrays.copyOf(sizes, count);
+    modified = Arrays.copyOf(modified, count);
+    childCounts = Arrays.copyOf(childCounts, count);
+    subdirectories = Arrays.copyOf(subdirectories, count);
+
+    // A directory is added before the entries below it, so the nodes below come later.
+    contentSizes = new long[count];
+    for (int i = count - 1; i >= 0; i--) {
+      int parent = parents[i];
+      if (parent < 0) continue;
+      contentSizes[parent] += (flags[i] & DIRECTORY) != 0 ? contentSizes[i] : sizes[i];
+      flags[parent] |= CONTENTS_SCANNED;
+    }
+
+    // Group the nodes by parent, bucket 0 holding the nodes directly in the root.
+    int[] start = new int[count + 2];
+    for (int i = 0; i < count; i++) start[parents[i] + 2]++;
+    for (int b = 1; b < start.length; b++) start[b] += start[b - 1];
+    int[] children = new int[count];
+    int[] fill = Arrays.copyOf(start, start.length);
+    int matched = 0;
+    for (int i = 0; i < count; i++) {
+      children[fill[parents[i] + 1]++] = i;
+      if ((flags[i] & MATCHED) != 0) matched++;
+    }
+    Comparator<Integer> byName = (a, b) -> names[a].compareTo(names[b]);
+    for (int b = 0; b <= count; b++) {
+      int from = start[b], to = start[b + 1];
+      if (to - from < 2) continue;
+      Integer[] group = new Integer[to - from];
+      for (int i = from; i < to; i++) group[i - from] = children[i];
+      Arrays.sort(group, byName);
+      for (int i = from; i < to; i++) children[i] = group[i - from];
+    }
+
+    // Walk the tree depth first, a directory before its contents.
+    int[] ordered = new int[matched];
+    int[] stack = new int[count];
+    int top = 0, n = 0;
+    for (int i = start[1] - 1; i >= start[0]; i--) stack[top++] = children[i];
+    while (top > 0) {
+      int node = stack[--top];
+      if ((flags[node] & MATCHED) != 0) ordered[n++] = node;
+      for (int i = start[node + 2] - 1; i >= start[node + 1]; i--) stack[top++] = children[i];
+    }
+    order = ordered;
+  }
+
+  /** Returns the total size of the entries. */
+  long totalSize() {
+    long total = 0;
+    for (int node : order) total += sizes[node];
+    return total;
+  }
+
+  @Override
+  public int size() {
+    return order.length;
+  }
+
+  @Override
+  public HpcPathAttributes get(int index) {
+    int node = order[index];
+    String path = path(node);
+    HpcPathAttributes pathAttributes = new HpcPathAttributes();
+    pathAttributes.setName(names[node]);
+    pathAttributes.setPath(path);
+    pathAttributes.setAbsolutePath(path);
+    pathAttributes.setUpdatedDate(new Date(modified[node]));
+    pathAttributes.setSize(sizes[node]);
+    if ((flags[node] & DIRECTORY) != 0) {
+      pathAttributes.setIsDirectory(true);
+      if (childCounts[node] >= 0) pathAttributes.setChildCount(childCounts[node]);
+      if (subdirectories[node] != SUBDIRECTORIES_UNKNOWN)
+        pathAttributes.setHasSubdirectories(subdirectories[node] == HAS_SUBDIRECTORIES);
+      if ((flags[node] & CONTENTS_SCANNED) != 0) pathAttributes.setContentSize(contentSizes[node]);
+    }
+    return pathAttributes;
+  }
+
+  private String path(int node) {
+    int depth = 0;
+    int parent = node;
+    while (parent >= 0) {
+      depth++;
+      parent = parents[parent];
+    }
+    String[] segments = new String[depth];
+    for (int i = depth - 1, n = node; i >= 0; i--, n = parents[n]) segments[i] = names[n];
+    StringBuilder path = new StringBuilder(roots[-1 - parent]);
+    for (String segment : segments) {
+      if (path.length() > 0 && path.charAt(path.length() - 1) != File.separatorChar)
+        path.append(File.separatorChar);
+      path.append(segment);
+    }
+    return path.toString();
+  }
+
+  /**
+   * Returns the entries accepted by the filter. The result shares the store of this one.
+   *
+   * @param filter Tests the view of each entry.
+   * @return The accepted entries, in the same order.
+   */
+  public HpcScanResult select(Predicate<HpcPathAttributes> filter) {
+    int[] selected = new int[order.length];
+    int n = 0;
+    for (int i = 0; i < order.length; i++) {
+      if (filter.test(get(i))) selected[n++] = order[i];
+    }
+    return new HpcScanResult(this, Arrays.copyOf(selected, n));
+  }
+
+  /**
+   * Returns the paths accepted by the filter, keeping them compact if they are a scan result.
+   *
+   * @param paths The paths.
+   * @param filter Tests each path.
+   * @return The accepted paths, in the same order.
+   */
+  public static List<HpcPathAttributes> select(
+      List<HpcPathAttributes> paths, Predicate<HpcPathAttributes> filter) {
+    if (paths instanceof HpcScanResult) return ((HpcScanResult) paths).select(filter);
+    List<HpcPathAttributes> selected = new ArrayList<>();
+    for (HpcPathAttributes path : paths) {
+      if (filter.test(path)) selected.add(path);
+    }
+    return selected;
+  }
+
+  /**
+   * Joins the results of several scans into one, in the order given.
+   *
+   * @param results The complete scan results.
+   * @return The joined result.
+   */
+  public static HpcScanResult join(List<HpcScanResult> results) {
+    if (results.size() == 1) return results.get(0);
+    List<String> roots = new ArrayList<>();
+    int count = 0, size = 0;
+    for (HpcScanResult result : results) {
+      roots.addAll(Arrays.asList(result.roots));
+      count += result.count;
+      size += result.order.length;
+    }
+    HpcScanResult joined = new HpcScanResult(roots.toArray(new String[roots.size()]), count, size);
+    int nodeOffset = 0, rootOffset = 0, orderOffset = 0;
+    for (HpcScanResult result : results) {
+      for (int i = 0; i < result.count; i++) {
+        int parent = result.parents[i];
+        joined.parents[nodeOffset + i] = parent >= 0 ? parent + nodeOffset : parent - rootOffset;
+      }
+      System.arraycopy(result.names, 0, joined.names, nodeOffset, result.count);
+      System.arraycopy(result.flags, 0, joined.flags, nodeOffset, result.count);
+      System.arraycopy(result.sizes, 0, joined.sizes, nodeOffset, result.count);
+      System.arraycopy(result.modified, 0, joined.modified, nodeOffset, result.count);
+      System.arraycopy(result.childCounts, 0, joined.childCounts, nodeOffset, result.count);
+      System.arraycopy(result.subdirectories, 0, joined.subdirectories, nodeOffset, result.count);
+      System.arraycopy(result.contentSizes, 0, joined.contentSizes, nodeOffset, result.count);
+      for (int i = 0; i < result.order.length; i++)
+        joined.order[orderOffset + i] = result.order[i] + nodeOffset;
+      nodeOffset += result.count;
+      rootOffset += result.roots.length;
+      orderOffset += result.order.length;
+    }
+    return joined;
+  }
+}
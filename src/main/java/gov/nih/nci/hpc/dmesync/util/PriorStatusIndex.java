@@ -0,0 +1,102 @@
+package gov.nih.nci.hpc.dmesync.util;
+
+import gov.nih.nci.hpc.dmesync.domain.StatusInfo;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The latest status recorded for each original file path under a base directory, loaded with one
+ * query so the scheduler does not look up every scanned file on its own.
+ *
+ * <p>Entries are ordered by start timestamp the way the single row queries order them, a missing
+ * start timestamp sorting first as Oracle does for a descending order. Only the rows that existed
+ * when the index was loaded are known, so a path that is not in the index still has to be looked
+ * up.
+ */
+public class PriorStatusIndex {
+
+  private final Map<String, Entry> entries = new HashMap<>();
+
+  /**
+   * Adds a StatusInfo row.
+   *
+   * @param originalFilePath the original file path
+   * @param id the StatusInfo id
+   * @param status the status
+   * @param startTimestamp the start timestamp
+   * @param uploadStartTimestamp the upload start timestamp
+   */
+  public void add(
+      String originalFilePath, Long id, String status, Date startTimestamp, Date uploadStartTimestamp) {
+    long start = startTimestamp == null ? Long.MAX_VALUE : startTimestamp.getTime();
+    Entry entry = entries.computeIfAbsent(originalFilePath, path -> new Entry());
+    if (entry.latestId == null || start > entry.latestStart) {
+      entry.latestId = id;
+      entry.latestStart = start;
+    }
+    if (status != null
+        && WorkflowConstants.getNoReRunStatuses().contains(status)
+        && (entry.noReRunId == null || start > entry.noReRunStart)) {
+      entry.noReRunId = id;
+      entry.noReRunStart = start;
+      entry.noReRunStatus = status;
+      entry.noReRunUploadStart = uploadStartTimestamp;
+    }
+  }
+
+  /**
+   * Checks whether the index has rows for the path.
+   *
+   * @param originalFilePath the original file path
+   * @return true if the path has rows
+   */
+  public boolean contains(String originalFilePath) {
+    return entries.containsKey(originalFilePath);
+  }
+
+  /**
+   * Finds the latest row of the path with a status that is not rerun, as
+   * findFirstStatusInfoByOriginalFilePathAndStatusIn does. Only the id, original file path, status
+   * and timestamps are set on the returned object.
+   *
+   * @param originalFilePath the original file path
+   * @return the StatusInfo object, or null if the path has no such row
+   */
+  public StatusInfo findNoReRunStatusInfo(String originalFilePath) {
+    Entry entry = entries.get(originalFilePath);
+    if (entry == null || entry.noReRunId == null) return null;
+    StatusInfo statusInfo = new StatusInfo();
+    statusInfo.setId(entry.noReRunId);
+    statusInfo.setOriginalFilePath(originalFilePath);
+    statusInfo.setStatus(entry.noReRunStatus);
+    if (entry.noReRunStart != Long.MAX_VALUE) statusInfo.setStartTimestamp(new Date(entry.noReRunStart));
+    statusInfo.setUploadStartTimestamp(entry.noReRunUploadStart);
+    return statusInfo;
+  }
+
+  /**
+   * Finds the id of the latest row of the path, whatever its status.
+   *
+   * @param originalFilePath the original file path
+   * @return the id, or null if the path has no rows
+   */
+  public Long findLatestId(String originalFilePath) {
+    Entry entry = entries.get(originalFilePath);
+    return entry == null ? null : entry.latestId;
+  }
+
+  /** @return the number of paths in the index */
+  public int size() {
+    return entries.size();
+  }
+
+  private static final class Entry {
+    private Long latestId;
+    private long latestStart;
+    private Long noReRunId;
+    private long noReRunStart;
+    private String noReRunStatus;
+    private Date noReRunUploadStart;
+  }
+}
@@ -0,0 +1,149 @@
+package gov.nih.nci.hpc.dmesync.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent record of how far the scan of a base directory got for a run, so the scan of the same
+ * run continues from there after an interruption instead of starting over from the base directory.
+ *
+ * <p>The scanner marks a directory completed once everything found under it has been passed on.
+ * Completing a directory drops the directories under it, so for a depth first scan the record is
+ * the completed directories along the path being scanned. The caller takes a snapshot and saves it
+ * once everything passed on before the snapshot has been processed, a completed directory is then
+ * not scanned again by the run.
+ */
+public class ScanCheckpoint {
+
+  private static final Logger logger = LoggerFactory.getLogger(ScanCheckpoint.class);
+
+  private final File file;
+  private String runId;
+  private final NavigableSet<String> completed = new ConcurrentSkipListSet<>();
+
+  private ScanCheckpoint(File file) {
+    this.file = file;
+  }
+
+  /**
+   * Loads the checkpoint of a base directory from the checkpoint directory. A checkpoint that is
+   * missing or cannot be read is started empty, so the scan starts over.
+   *
+   * @param checkpointDir The directory holding the checkpoint files.
+   * @param baseDir The base directory being scanned.
+   * @return The checkpoint.
+   */
+  public static ScanCheckpoint load(String checkpointDir, String baseDir) {
+    String base;
+    try {
+      base = new File(baseDir).getCanonicalPath();
+    } catch (IOException e) {
+      base = new File(baseDir).getAbsolutePath();
+    }
+    File file =
+        new File(
+            checkpointDir,
+            "scan-checkpoint-"
+                + UUID.nameUUIDFromBytes(base.getBytes(StandardCharsets.UTF_8))
+                + ".ser");
+    ScanCheckpoint checkpoint = new ScanCheckpoint(file);
+    if (file.isFile()) {
+      try (ObjectInputStream in =
+          new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+        checkpoint.runId = (String) in.readObject();
+        checkpoint.completed.addAll(Arrays.asList((String[]) in.readObject()));
+        logger.debug(
+            "Loaded scan checkpoint {} of run {} with {} directories",
+            file,
+            checkpoint.runId,
+            checkpoint.completed.size());
+      } catch (IOException | ClassNotFoundException | ClassCastException e) {
+        logger.warn("Ignoring unreadable scan checkpoint {}, the scan will start over", file, e);
+        checkpoint.runId = null;
+        checkpoint.completed.clear();
+      }
+    }
+    return checkpoint;
+  }
+
+  /** @return The run whose scan was interrupted, or null if the last scan completed. */
+  public String getRunId() {
+    return runId;
+  }
+
+  /**
+   * Starts the scan of a run. The directories completed by an earlier scan of the same run are not
+   * scanned again, those of another run are dropped.
+   *
+   * @param runId The run ID.
+   */
+  public void start(String runId) {
+    if (!runId.equals(this.runId)) completed.clear();
+    this.runId = runId;
+  }
+
+  /** @return The directories completed so far, to be saved once what was found in them is processed. */
+  public List<String> snapshot() {
+    return new ArrayList<>(completed);
+  }
+
+  /**
+   * Saves a snapshot, replacing the previous one.
+   *
+   * @param snapshot The directories completed.
+   * @throws IOException on IO error
+   */
+  public void save(List<String> snapshot) throws IOException {
+    Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+    File temp = new File(file.getPath() + ".tmp");
+    try (ObjectOutputStream out =
+        new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+      out.writeObject(runId);
+      out.writeObject(snapshot.toArray(new String[snapshot.size()]));
+    }
+    Files.move(
+        temp.toPath(),
+        file.toPath(),
+        StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    logger.debug("Saved scan checkpoint {} of run {} with {} directories", file, runId, snapshot.size());
+  }
+
+  /**
+   * Deletes the checkpoint once the scan completed, so the next run starts over.
+   *
+   * @throws IOException on IO error
+   */
+  public void delete() throws IOException {
+    Files.deleteIfExists(file.toPath());
+    runId = null;
+    completed.clear();
+  }
+
+  /** Returns true if the directory was completed, the scan does not get below a completed one. */
+  boolean isCompleted(File dir) {
+    return completed.contains(dir.getPath());
+  }
+
+  /** Marks a directory completed, the directories under it no longer need to be recorded. */
+  void completed(File dir) {
+    String path = dir.getPath();
+    completed.subSet(path + File.separatorChar, path + (char) (File.separatorChar + 1)).clear();
+    completed.add(path);
+  }
+}
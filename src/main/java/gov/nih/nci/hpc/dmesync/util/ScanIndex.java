@@ -0,0 +1,165 @@
+package gov.nih.nci.hpc.dmesync.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent record of the directory listings seen by the last completed scan of a root directory.
+ *
+ * <p>A directory whose modification time is unchanged since it was recorded still has the same
+ * entries, so its listing is reused instead of being read again. Subdirectories are always checked,
+ * so only the subtrees that changed are listed. Adding, removing or renaming an entry updates the
+ * modification time of its directory, but rewriting a file in place does not, so only the names are
+ * reused and the attributes of the files that match are still read on every scan.
+ */
+public class ScanIndex {
+
+  private static final Logger logger = LoggerFactory.getLogger(ScanIndex.class);
+
+  // Directories modified this recently are not recorded, since a change made within the same
+  // timestamp tick as the listing would not be noticed on the next scan.
+  private static final long SETTLE_MILLIS = 2000L;
+
+  private final File file;
+  private final Map<String, Listing> previous;
+  private final Map<String, Listing> current = new ConcurrentHashMap<>();
+  // Subtrees skipped by this scan, their listings are carried over from the previous index.
+  private final Set<String> kept = ConcurrentHashMap.newKeySet();
+  private final long scanStart = System.currentTimeMillis();
+
+  private ScanIndex(File file, Map<String, Listing> previous) {
+    this.file = file;
+    this.previous = previous;
+  }
+
+  /**
+   * Loads the index of a root directory from the index directory. An index that is missing or
+   * cannot be read is started empty, so the next scan lists every directory.
+   *
+   * @param indexDir The directory holding the index files.
+   * @param rootDir The root directory being scanned.
+   * @return The index.
+   */
+  @SuppressWarnings("unchecked")
+  public static ScanIndex load(String indexDir, String rootDir) {
+    String root;
+    try {
+      root = new File(rootDir).getCanonicalPath();
+    } catch (IOException e) {
+      root = new File(rootDir).getAbsolutePath();
+    }
+    File file =
+        new File(
+            indexDir,
+            "scan-index-" + UUID.nameUUIDFromBytes(root.getBytes(StandardCharsets.UTF_8)) + ".ser");
+    Map<String, Listing> previous = Collections.emptyMap();
+    if (file.isFile()) {
+      try (ObjectInputStream in =
+          new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+        previous = (Map<String, Listing>) in.readObject();
+        logger.debug("Loaded scan index {} with {} directories", file, previous.size());
+      } catch (IOException | ClassNotFoundException | ClassCastException e) {
+        logger.warn("Ignoring unreadable scan index {}, all directories will be listed", file, e);
+      }
+    }
+    return new ScanIndex(file, previous);
+  }
+
+  /**
+   * Saves the listings recorded by this scan, replacing the previous index. Directories that were
+   * not visited by this scan are dropped, unless they are in a subtree it kept.
+   *
+   * @throws IOException on IO error
+   */
+  public void save() throws IOException {
+    Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+    File temp = new File(file.getPath() + ".tmp");
+    Map<String, Listing> listings = keptListings();
+    try (ObjectOutputStream out =
+        new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+      out.writeObject(listings);
+    }
+    Files.move(
+        temp.toPath(),
+        file.toPath(),
+        StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    logger.debug("Saved scan index {} with {} directories", file, listings.size());
+  }
+
+  /**
+   * Keeps the recorded listings of a subtree that this scan does not visit, such as a directory
+   * completed before an interrupted scan was resumed, so saving does not drop them.
+   */
+  void keep(File dir) {
+    kept.add(dir.getPath());
+  }
+
+  private Map<String, Listing> keptListings() {
+    Map<String, Listing> listings = new HashMap<>(current);
+    if (kept.isEmpty()) return listings;
+    for (Map.Entry<String, Listing> entry : previous.entrySet()) {
+      if (listings.containsKey(entry.getKey())) continue;
+      for (File dir = new File(entry.getKey()); dir != null; dir = dir.getParentFile()) {
+        if (kept.contains(dir.getPath())) {
+          listings.put(entry.getKey(), entry.getValue());
+          break;
+        }
+      }
+    }
+    return listings;
+  }
+
+  /** Returns the recorded listing of the directory, or null if it was modified since. */
+  Listing listing(File dir, BasicFileAttributes dirAttributes) {
+    if (dirAttributes == null) return null;
+    Listing listing = previous.get(dir.getPath());
+    if (listing == null || listing.lastModified != dirAttributes.lastModifiedTime().toMillis())
+      return null;
+    return listing;
+  }
+
+  /** Records the entry names listed for a directory. */
+  void record(File dir, BasicFileAttributes dirAttributes, List<String> names) {
+    if (dirAttributes == null) return;
+    long lastModified = dirAttributes.lastModifiedTime().toMillis();
+    if (lastModified > scanStart - SETTLE_MILLIS) return;
+    current.put(dir.getPath(), new Listing(lastModified, names));
+  }
+
+  /** The sorted entry names of a directory. */
+  static final class Listing implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long lastModified;
+    private final String[] names;
+
+    Listing(long lastModified, List<String> names) {
+      this.lastModified = lastModified;
+      this.names = names.toArray(new String[names.size()]);
+    }
+
+    List<String> names() {
+      return Arrays.asList(names);
+    }
+  }
+}
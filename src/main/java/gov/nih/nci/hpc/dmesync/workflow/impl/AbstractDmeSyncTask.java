@@ -48,26 +48,21 @@ public abstract class AbstractDmeSyncTask implements DmeSyncTask {
 
   private boolean checkComplete(Long objectId) {
 
-    TaskInfo task = dmeSyncWorkflowService.getService(access).findFirstTaskInfoByObjectIdAndTaskName(objectId, taskName);
+    if (!checkTaskForCompletion) return false;
+    TaskInfo task = findTask(objectId, taskName);
 
-    return (checkTaskForCompletion && task != null && task.isCompleted());
+    return (task != null && task.isCompleted());
   }
 
   protected void upsertTask(Long objectId) {
-    
-    TaskInfo task = dmeSyncWorkflowService.getService(access).findFirstTaskInfoByObjectIdAndTaskName(objectId, taskName);
-    if (task == null) {
-      task = new TaskInfo();
-      task.setObjectId(objectId);
-      task.setTaskName(taskName);
-    }
-    task.setCompleted(true);
-    dmeSyncWorkflowService.getService(access).saveTaskInfo(task);
+    upsertTaskByTaskName(objectId, taskName);
   }
   
   protected void upsertTaskByTaskName(Long objectId, String taskMapName) {
 	    
-	    TaskInfo task = dmeSyncWorkflowService.getService(access).findFirstTaskInfoByObjectIdAndTaskName(objectId, taskMapName);
+	    TaskInfo task = findTask(objectId, taskMapName);
+	    // A task that runs every time, such as the metadata task, is only recorded once.
+	    if (task != null && task.isCompleted()) return;
 	    if (task == null) {
 	      task = new TaskInfo();
 	      task.setObjectId(objectId);
@@ -75,7 +70,23 @@ public abstract class AbstractDmeSyncTask implements DmeSyncTask {
 	    }
 	    task.setCompleted(true);
 	    dmeSyncWorkflowService.getService(access).saveTaskInfo(task);
+	    DmeSyncTaskContext context = DmeSyncTaskContext.of(objectId);
+	    if (context != null) context.put(task);
 	  }
+
+  /** Deletes the task rows of the object, so its workflow starts over with the first task. */
+  protected void deleteTasks(Long objectId) {
+    dmeSyncWorkflowService.getService(access).deleteTaskInfoByObjectId(objectId);
+    DmeSyncTaskContext context = DmeSyncTaskContext.of(objectId);
+    if (context != null) context.clear();
+  }
+
+  /** Returns the task row from the workflow's context, or queries it outside of a workflow. */
+  private TaskInfo findTask(Long objectId, String taskMapName) {
+    DmeSyncTaskContext context = DmeSyncTaskContext.of(objectId);
+    if (context != null) return context.get(taskMapName);
+    return dmeSyncWorkflowService.getService(access).findFirstTaskInfoByObjectIdAndTaskName(objectId, taskMapName);
+  }
   
   public String getTaskName() {
     return taskName;
@@ -15,6 +15,7 @@ import org.springframework.stereotype.Component;
 import gov.nih.nci.hpc.dmesync.DmeSyncMailServiceFactory;
 import gov.nih.nci.hpc.dmesync.domain.StatusInfo;
 import gov.nih.nci.hpc.dmesync.dto.DmeSyncMessageDto;
+import gov.nih.nci.hpc.dmesync.jms.DmeSyncAdmissionController;
 import gov.nih.nci.hpc.dmesync.jms.DmeSyncProducer;
 import gov.nih.nci.hpc.dmesync.util.TarUtil;
 import gov.nih.nci.hpc.dmesync.workflow.DmeSyncTask;
@@ -58,6 +59,8 @@ public class DmeSyncCleanupTaskImpl extends AbstractDmeSyncTask implements DmeSy
   private boolean selectiveScan;
   @Autowired
   private DmeSyncProducer sender;
+
+  @Autowired private DmeSyncAdmissionController admissionController;
   
   @Autowired private DmeSyncMailServiceFactory dmeSyncMailServiceFactory;
 
@@ -93,6 +96,8 @@ public class DmeSyncCleanupTaskImpl extends AbstractDmeSyncTask implements DmeSy
 					} else {
 						TarUtil.deleteTarAndParentsIfEmpty(object.getSourceFilePath(), syncWorkDir, doc);
 					}
+					// The space is free for the scheduler to admit more requests.
+					admissionController.unstaged(object.getId());
 				}
 			} else
 				logger.info("[{}] Test so it will not remove but clean up called for {} WORK_DIR: {}",
@@ -1,6 +1,7 @@
 package gov.nih.nci.hpc.dmesync.workflow.impl;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import javax.annotation.PostConstruct;
@@ -133,13 +134,14 @@ public class DmeSyncMetadataTaskImpl extends AbstractDmeSyncTask implements DmeS
   }
   
   public void saveMetaDataInfo(StatusInfo object, HpcDataObjectRegistrationRequestDTO requestDto) {
+    List<MetadataInfo> metadataInfos = new ArrayList<>();
     //Save Metadata entries
     for(HpcMetadataEntry entry: requestDto.getMetadataEntries()) {
       MetadataInfo metadataInfo = new MetadataInfo();
       metadataInfo.setObjectId(object.getId());
       metadataInfo.setMetaDataKey(entry.getAttribute());
       metadataInfo.setMetaDataValue(entry.getValue());
-      dmeSyncWorkflowService.getService(access).saveMetadataInfo(metadataInfo);
+      metadataInfos.add(metadataInfo);
     }
     //Save Extracted Metadata entries
     for(HpcMetadataEntry entry: requestDto.getExtractedMetadataEntries()) {
@@ -147,7 +149,7 @@ public class DmeSyncMetadataTaskImpl extends AbstractDmeSyncTask implements DmeS
       metadataInfo.setObjectId(object.getId());
       metadataInfo.setMetaDataKey(entry.getAttribute());
       metadataInfo.setMetaDataValue(entry.getValue());
-      dmeSyncWorkflowService.getService(access).saveMetadataInfo(metadataInfo);
+      metadataInfos.add(metadataInfo);
     }
     //Save parent metadata entries
     HpcBulkMetadataEntries entries = requestDto.getParentCollectionsBulkMetadataEntries();
@@ -158,10 +160,12 @@ public class DmeSyncMetadataTaskImpl extends AbstractDmeSyncTask implements DmeS
           metadataInfo.setObjectId(object.getId());
           metadataInfo.setMetaDataKey(entry.getAttribute()); // Might need to append bulkEntry.getPath()
           metadataInfo.setMetaDataValue(entry.getValue());
-          dmeSyncWorkflowService.getService(access).saveMetadataInfo(metadataInfo);
+          metadataInfos.add(metadataInfo);
         }
       }
     }
+    //Insert the entries in one batch
+    dmeSyncWorkflowService.getService(access).saveAllMetadataInfo(metadataInfos);
   }
   
   /**
@@ -179,6 +179,7 @@ public class DmeSyncProcessMultipleTarsTaskImpl extends AbstractDmeSyncTask impl
 				
 					logger.info("[{}] Started creating {} tars with total of  {} for the dataset {} with {} files ", super.getTaskName(),
 							tarsCounter,expectedTarRequests, tarFileParentName, fileList.size());
+					List<StatusInfo> tarRequests = new ArrayList<>();
 
 					for (int i = 0; i < expectedTarRequests; i++) {
 						int start = i * filesPerTar;
@@ -267,7 +268,7 @@ public class DmeSyncProcessMultipleTarsTaskImpl extends AbstractDmeSyncTask impl
 										//If tar start index matches and existing tar record is available in database , then send the existing Id to database
 										logger.info("[{}]Enqueuing the existing tar request {} with Id{} from DB {}",
 												super.getTaskName(), tarFileName ,recordForTarfile.getId(), tarFilePath);
-										enqueueRequestToJms(recordForTarfile);
+										tarRequests.add(recordForTarfile);
 									}
 									
 							}else {
@@ -279,7 +280,7 @@ public class DmeSyncProcessMultipleTarsTaskImpl extends AbstractDmeSyncTask impl
 								// Send the objectId to the message queue for processing
 								logger.info("[{}]Enqueuing the new tar request {} with Id {}", super.getTaskName(),
 										tarFileName,newTarRequest.getId());
-								enqueueRequestToJms(newTarRequest);
+								tarRequests.add(newTarRequest);
 							}
 							
 						} else {
@@ -287,12 +288,13 @@ public class DmeSyncProcessMultipleTarsTaskImpl extends AbstractDmeSyncTask impl
 							StatusInfo newTarRequest = insertNewRowforTar(object, tarFileName, true, start, end, null , tarContentsCount);
 							logger.info("[{}]Enqueuing the new tar request {}", super.getTaskName(),
 									newTarRequest.getId());
-							enqueueRequestToJms(newTarRequest);
+							tarRequests.add(newTarRequest);
 						}
 
 						writeToContentsFile(notesWriter, tarFileName, subList);
 					}
 
+					enqueueRequestToJms(tarRequests);
 					notesWriter.close();
 					logger.info("[{}] Ended Multiple tar requests processing in {}", super.getTaskName());
 					
@@ -363,7 +365,7 @@ public class DmeSyncProcessMultipleTarsTaskImpl extends AbstractDmeSyncTask impl
 							checkForUploadedContentsFile.setEndWorkflow(false);
 							checkForUploadedContentsFile.setFilesize(tarMappingFile.length());
 							checkForUploadedContentsFile = dmeSyncWorkflowService.getService(access).saveStatusInfo(checkForUploadedContentsFile);
-							enqueueRequestToJms(checkForUploadedContentsFile);
+							enqueueRequestToJms(List.of(checkForUploadedContentsFile));
 						   }
 						} else {
 							// If there is no content files record in DB, create a new one.
@@ -377,7 +379,7 @@ public class DmeSyncProcessMultipleTarsTaskImpl extends AbstractDmeSyncTask impl
 								  // If the contents file is not uploaded and all the tars are uploaded, so enqueing the contents file 
 								logger.info("[{}]Enqueuing the contents file upload request {}", super.getTaskName(),
 											tarMappingFile.getName());
-								enqueueRequestToJms(contentsFileRecord);
+								enqueueRequestToJms(List.of(contentsFileRecord));
 							}
 							// This contentsFileRecord objectId is send to the message queue in the cleanup task after all tars are uploaded
 						 }
@@ -464,10 +466,17 @@ public class DmeSyncProcessMultipleTarsTaskImpl extends AbstractDmeSyncTask impl
 		notesWriter.write("\n");
 	}
 	
-	private void enqueueRequestToJms(StatusInfo object ) {
-		DmeSyncMessageDto message = new DmeSyncMessageDto();
-		message.setObjectId(object.getId());
-		sender.send(message, "inbound.queue");
+	/**
+	 * Sends the requests to the inbound queue together in one transaction.
+	 */
+	private void enqueueRequestToJms(List<StatusInfo> objects) {
+		List<DmeSyncMessageDto> messages = new ArrayList<>();
+		for (StatusInfo object : objects) {
+			DmeSyncMessageDto message = new DmeSyncMessageDto();
+			message.setObjectId(object.getId());
+			messages.add(message);
+		}
+		sender.send(messages, "inbound.queue");
 		logger.info("get queue count" + sender.getQueueCount("inbound.queue"));
 		
 	}
@@ -521,6 +530,7 @@ public class DmeSyncProcessMultipleTarsTaskImpl extends AbstractDmeSyncTask impl
 
 		// using a folder coverage check to check if all folders in the base folder are covered.
 		int coveredFolders = 0;
+		List<StatusInfo> tarRequests = new ArrayList<>();
 
 		
 		for (Map.Entry<String, List<File>> entry : grouped.entrySet()) {
@@ -557,7 +567,7 @@ public class DmeSyncProcessMultipleTarsTaskImpl extends AbstractDmeSyncTask impl
 					// reuse existing row
 					logger.info("[{}] Enqueuing existing grouped tar request {} id={} path={}", super.getTaskName(),
 							tarFileName, recordForTarfile.getId(), tarFilePath);
-					enqueueRequestToJms(recordForTarfile);
+					tarRequests.add(recordForTarfile);
 
 				} else {
 					// create new row
@@ -566,7 +576,7 @@ public class DmeSyncProcessMultipleTarsTaskImpl extends AbstractDmeSyncTask impl
 					newTarRequest.setTarContentsCount(foldersInGroup.size());
 					logger.info("[{}] Enqueuing new grouped tar request {} id={}", super.getTaskName(), tarFileName,
 							newTarRequest.getId());
-					enqueueRequestToJms(newTarRequest);
+					tarRequests.add(newTarRequest);
 				}
 
 			} else {
@@ -574,7 +584,7 @@ public class DmeSyncProcessMultipleTarsTaskImpl extends AbstractDmeSyncTask impl
 						tarContentsCount);
 				logger.info("[{}] Enqueuing new grouped tar request {} id={}", super.getTaskName(), tarFileName,
 						newTarRequest.getId());
-				enqueueRequestToJms(newTarRequest);
+				tarRequests.add(newTarRequest);
 			}
 
 			//  mapping file: write tar -> folder names
@@ -582,6 +592,7 @@ public class DmeSyncProcessMultipleTarsTaskImpl extends AbstractDmeSyncTask impl
 
 		}
 
+		enqueueRequestToJms(tarRequests);
 		notesWriter.close();
 
 		// Folder coverage verification
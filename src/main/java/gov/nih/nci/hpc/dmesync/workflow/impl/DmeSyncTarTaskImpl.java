@@ -30,6 +30,7 @@ import gov.nih.nci.hpc.dmesync.exception.DmeSyncMappingException;
 import gov.nih.nci.hpc.dmesync.exception.DmeSyncStorageException;
 import gov.nih.nci.hpc.dmesync.exception.DmeSyncVerificationException;
 import gov.nih.nci.hpc.dmesync.exception.DmeSyncWorkflowException;
+import gov.nih.nci.hpc.dmesync.jms.DmeSyncAdmissionController;
 import gov.nih.nci.hpc.dmesync.jms.DmeSyncProducer;
 import gov.nih.nci.hpc.dmesync.util.TarUtil;
 import gov.nih.nci.hpc.dmesync.util.WorkflowConstants;
@@ -127,6 +128,9 @@ public class DmeSyncTarTaskImpl extends AbstractDmeSyncTask implements DmeSyncTa
 
 	@Autowired
 	private DmeSyncProducer sender;
+
+	@Autowired
+	private DmeSyncAdmissionController admissionController;
 	
 	@Autowired 
 	private DmeSyncPathMetadataProcessorFactory metadataProcessorFactory; 
@@ -233,6 +237,7 @@ public class DmeSyncTarTaskImpl extends AbstractDmeSyncTask implements DmeSyncTa
 				verifyTarSizeAgainstSourceFolder(sourceDirPath.toString(), folderSize,tarFileName, createdTarFileSize);
 
 				object.setFilesize(createdTarFileSize);
+				admissionController.staged(object.getId(), createdTarFileSize);
 				object.setSourceFileName(tarFileName);
 				object.setTarEndTimestamp(new Date());
 				object = dmeSyncWorkflowService.getService(access).saveStatusInfo(object);
@@ -370,6 +375,7 @@ public class DmeSyncTarTaskImpl extends AbstractDmeSyncTask implements DmeSyncTa
 		}
 		// Update the record for upload
 		object.setFilesize(createdTarFile.length());
+		admissionController.staged(object.getId(), createdTarFile.length());
 		object.setSourceFileName(tarFileName);
 		object.setSourceFilePath(tarFile);
 		object.setTarEndTimestamp(new Date());
@@ -0,0 +1,67 @@
+package gov.nih.nci.hpc.dmesync.workflow.impl;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import gov.nih.nci.hpc.dmesync.domain.TaskInfo;
+
+/**
+ * The TaskInfo rows of the object whose workflow runs on the current thread.
+ *
+ * <p>They are loaded with one query when the workflow starts, so the tasks check and record their
+ * completion against them instead of querying TASK_INFO for each task. Outside of a workflow, such
+ * as a task called by the scheduler, there is no context and the tasks query the rows themselves.
+ */
+final class DmeSyncTaskContext {
+
+  private static final ThreadLocal<DmeSyncTaskContext> current = new ThreadLocal<>();
+
+  private final Long objectId;
+  private final Map<String, TaskInfo> tasks = new HashMap<>();
+
+  private DmeSyncTaskContext(Long objectId, List<TaskInfo> taskInfos) {
+    this.objectId = objectId;
+    for (TaskInfo taskInfo : taskInfos) {
+      // The first row of a task name, like findFirstByObjectIdAndTaskName.
+      tasks.putIfAbsent(taskInfo.getTaskName(), taskInfo);
+    }
+  }
+
+  /**
+   * Opens the context of an object for the workflow on the current thread.
+   *
+   * @param objectId the StatusInfo id
+   * @param taskInfos the TaskInfo rows of the object
+   */
+  static void open(Long objectId, List<TaskInfo> taskInfos) {
+    current.set(new DmeSyncTaskContext(objectId, taskInfos));
+  }
+
+  /** Closes the context of the workflow on the current thread. */
+  static void close() {
+    current.remove();
+  }
+
+  /**
+   * @param objectId the StatusInfo id
+   * @return the context of the object if its workflow runs on the current thread, otherwise null
+   */
+  static DmeSyncTaskContext of(Long objectId) {
+    DmeSyncTaskContext context = current.get();
+    return context != null && context.objectId.equals(objectId) ? context : null;
+  }
+
+  TaskInfo get(String taskName) {
+    return tasks.get(taskName);
+  }
+
+  void put(TaskInfo taskInfo) {
+    tasks.put(taskInfo.getTaskName(), taskInfo);
+  }
+
+  /** Drops the rows once they have been deleted, so the tasks start over. */
+  void clear() {
+    tasks.clear();
+  }
+}
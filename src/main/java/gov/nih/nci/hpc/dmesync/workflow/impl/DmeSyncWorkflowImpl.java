@@ -23,6 +23,9 @@ import gov.nih.nci.hpc.dmesync.exception.DmeSyncVerificationException;
 import gov.nih.nci.hpc.dmesync.exception.DmeSyncStorageException;
 
 import gov.nih.nci.hpc.dmesync.exception.DmeSyncWorkflowException;
+import gov.nih.nci.hpc.dmesync.jms.DmeSyncAdmissionController;
+import gov.nih.nci.hpc.dmesync.jms.DmeSyncRunTracker;
+import gov.nih.nci.hpc.dmesync.jms.DmeSyncWorkItemClaimer;
 import gov.nih.nci.hpc.dmesync.workflow.DmeSyncTask;
 import gov.nih.nci.hpc.dmesync.workflow.DmeSyncWorkflow;
 
@@ -58,6 +61,9 @@ public class DmeSyncWorkflowImpl implements DmeSyncWorkflow {
   @Autowired private DmeSyncCreateSoftlinkTaskImpl createSoftlinkTask;
   @Autowired private DmeSyncCreateCollectionSoftlinkTaskImpl createCollectionSoftlinkTask;
   @Autowired private DmeSyncMoveDataObjectTaskImpl moveDataObjectTask;
+  @Autowired private DmeSyncAdmissionController admissionController;
+  @Autowired private DmeSyncRunTracker runTracker;
+  @Autowired private DmeSyncWorkItemClaimer workItemClaimer;
   @Autowired private DmeSyncTarPreProcessTaskImpl tarPreProcessTask;
   @Value("${dmesync.db.access:local}")
   private String access;
@@ -176,8 +182,13 @@ public class DmeSyncWorkflowImpl implements DmeSyncWorkflow {
   public void start(StatusInfo statusInfo) throws DmeSyncWorkflowException {
     // Execute tasks. If any task fails with a need for retry, throw exception for rollback
     logger.info("[Workflow] Starting");
+    // The object is outstanding until its message is no longer redelivered.
+    boolean redelivered = false;
 
     try {
+      // The tasks check and record their completion against the rows loaded once here.
+      DmeSyncTaskContext.open(statusInfo.getId(),
+          dmeSyncWorkflowService.getService(access).findAllTaskInfoByObjectId(statusInfo.getId()));
       //Clear any previous error in case of a retry
       statusInfo.setError("");
       statusInfo.setStartTimestamp(new Date());
@@ -219,6 +230,7 @@ public class DmeSyncWorkflowImpl implements DmeSyncWorkflow {
 	  }
       statusInfo.setRetryCount(statusInfo.getRetryCount() + 1);
       dmeSyncWorkflowService.getService(access).retryWorkflow(statusInfo, setStatus, e);
+      redelivered = !setStatus;
       
       throw e;
       
@@ -230,6 +242,13 @@ public class DmeSyncWorkflowImpl implements DmeSyncWorkflow {
    		  
    	   }
       dmeSyncWorkflowService.getService(access).retryWorkflow(statusInfo, setStatus ,e );
+    } finally {
+      DmeSyncTaskContext.close();
+      if (!redelivered) {
+        admissionController.release(statusInfo.getId());
+        workItemClaimer.ended(statusInfo.getId());
+        runTracker.finished(statusInfo.getId());
+      }
     }
   }
 
@@ -76,9 +76,25 @@ CREATE TABLE DME_WFLOW_DB.PERMISSION_BOOKMARK_INFO
 );
 --) TABLESPACE dmewflowdev;
 
+CREATE TABLE DME_WFLOW_DB.WORK_ITEM
+(
+    OBJECT_ID        NUMBER(18) PRIMARY KEY,
+    DOC              VARCHAR(255) NOT NULL,
+    PRIORITY         NUMBER(10),
+    CLAIMED_BY       VARCHAR(255),
+    LEASE_EXPIRATION TIMESTAMP,
+    CREATED          TIMESTAMP
+);
+--) TABLESPACE dmewflowdev;
+CREATE INDEX DME_WFLOW_DB.WORK_ITEM_DOC_IDX ON DME_WFLOW_DB.WORK_ITEM (DOC, LEASE_EXPIRATION);
+CREATE INDEX DME_WFLOW_DB.WORK_ITEM_CLAIMED_BY_IDX ON DME_WFLOW_DB.WORK_ITEM (CLAIMED_BY);
+
 create sequence STATUS_INFO_SEQ nocache;
 create sequence METADATA_INFO_SEQ nocache;
 create sequence TASK_INFO_SEQ nocache;
 ALTER SEQUENCE STATUS_INFO_SEQ INCREMENT BY 100000;
 select STATUS_INFO_SEQ.nextval from dual;
-ALTER SEQUENCE STATUS_INFO_SEQ INCREMENT BY 1;
\ No newline at end of file
+ALTER SEQUENCE STATUS_INFO_SEQ INCREMENT BY 50;
+-- Ids are allocated 50 at a time, matching allocationSize of the entities.
+ALTER SEQUENCE METADATA_INFO_SEQ INCREMENT BY 50;
+ALTER SEQUENCE TASK_INFO_SEQ INCREMENT BY 50;
\ No newline at end of file
@@ -0,0 +1,99 @@
+package gov.nih.nci.hpc.dmesync.jms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class DmeSyncAdmissionControllerTest {
+
+  private static DmeSyncAdmissionController newController(int maxObjects, long maxStagedBytes) {
+    DmeSyncAdmissionController controller = new DmeSyncAdmissionController();
+    ReflectionTestUtils.setField(controller, "maxObjects", maxObjects);
+    ReflectionTestUtils.setField(controller, "maxStagedBytes", maxStagedBytes);
+    ReflectionTestUtils.setField(controller, "recheckMillis", 50L);
+    // Without the statistics of an embedded broker the slots are only freed by the workflows.
+    DmeSyncProducer sender = mock(DmeSyncProducer.class);
+    when(sender.getInFlightCount("inbound.queue")).thenReturn(-1L);
+    ReflectionTestUtils.setField(controller, "sender", sender);
+    return controller;
+  }
+
+  @Test
+  void capsObjectsInFlightAndStagedBytes() {
+    DmeSyncAdmissionController controller = newController(2, 100);
+
+    assertTrue(controller.tryAdmit(1L));
+    assertTrue(controller.tryAdmit(2L));
+    assertFalse(controller.tryAdmit(3L));
+    // An object already in flight, such as a reattempt, takes no other slot.
+    assertTrue(controller.tryAdmit(2L));
+
+    controller.release(1L);
+    controller.staged(2L, 150);
+    assertFalse(controller.tryAdmit(3L));
+    assertEquals(150, controller.getStagedBytes());
+    // The tar is still in the work directory until the cleanup removes it.
+    controller.release(2L);
+    assertEquals(150, controller.getStagedBytes());
+    assertTrue(controller.tryAdmit(2L));
+
+    controller.unstaged(2L);
+    assertTrue(controller.tryAdmit(3L));
+    assertEquals(2, controller.getInFlightCount());
+  }
+
+  @Test
+  void admitWaitsForAnObjectToEnd() throws InterruptedException {
+    DmeSyncAdmissionController controller = newController(1, 0);
+    assertTrue(controller.tryAdmit(1L));
+
+    Thread scheduler = new Thread(() -> controller.admit(2L));
+    scheduler.start();
+    scheduler.join(200);
+    assertTrue(scheduler.isAlive());
+
+    controller.release(1L);
+    scheduler.join(TimeUnit.SECONDS.toMillis(10));
+    assertFalse(scheduler.isAlive());
+    assertEquals(1, controller.getInFlightCount());
+  }
+
+  @Test
+  void admitFreesTheSlotsOfObjectsNoLongerOnTheBroker() throws InterruptedException {
+    DmeSyncAdmissionController controller = newController(1, 0);
+    DmeSyncProducer sender = mock(DmeSyncProducer.class);
+    when(sender.getQueueCount("inbound.queue")).thenReturn(1);
+    when(sender.getInFlightCount("inbound.queue")).thenReturn(1L);
+    ReflectionTestUtils.setField(controller, "sender", sender);
+    assertTrue(controller.tryAdmit(1L));
+
+    Thread scheduler = new Thread(() -> controller.admit(2L));
+    scheduler.start();
+    // Object 1 is still on the broker, so it keeps its slot.
+    scheduler.join(300);
+    assertTrue(scheduler.isAlive());
+
+    // Its message went to the dead letter queue without its workflow ending.
+    when(sender.getQueueCount("inbound.queue")).thenReturn(0);
+    when(sender.getInFlightCount("inbound.queue")).thenReturn(0L);
+    scheduler.join(TimeUnit.SECONDS.toMillis(10));
+    assertFalse(scheduler.isAlive());
+    assertEquals(1, controller.getInFlightCount());
+  }
+
+  @Test
+  void anObjectIsAlwaysAdmittedWhenNothingIsInFlight() {
+    DmeSyncAdmissionController controller = newController(0, 10);
+    controller.staged(7L, 50);
+
+    assertTrue(controller.tryAdmit(1L));
+    assertFalse(controller.tryAdmit(2L));
+  }
+}
@@ -0,0 +1,41 @@
+package gov.nih.nci.hpc.dmesync.jms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class DmeSyncPriorityPolicyTest {
+
+  private static DmeSyncPriorityPolicy newPolicy(String policy) {
+    DmeSyncPriorityPolicy priorityPolicy = new DmeSyncPriorityPolicy();
+    ReflectionTestUtils.setField(priorityPolicy, "policy", policy);
+    return priorityPolicy;
+  }
+
+  @Test
+  void largestFirstGivesTheBigObjectsTheHighPriorities() {
+    DmeSyncPriorityPolicy policy = newPolicy(DmeSyncPriorityPolicy.LARGEST_FIRST);
+
+    assertEquals(Integer.valueOf(0), policy.getPriority(100L));
+    assertEquals(Integer.valueOf(3), policy.getPriority(1L << 20));
+    assertEquals(Integer.valueOf(6), policy.getPriority(1L << 30));
+    assertEquals(Integer.valueOf(9), policy.getPriority(2L << 40));
+    // A folder to be tarred has no size yet.
+    assertEquals(Integer.valueOf(DmeSyncPriorityPolicy.DEFAULT_PRIORITY), policy.getPriority(null));
+  }
+
+  @Test
+  void smallestFirstReversesThePriorities() {
+    DmeSyncPriorityPolicy policy = newPolicy(DmeSyncPriorityPolicy.SMALLEST_FIRST);
+
+    assertEquals(Integer.valueOf(9), policy.getPriority(100L));
+    assertEquals(Integer.valueOf(0), policy.getPriority(2L << 40));
+  }
+
+  @Test
+  void noPolicyLeavesThePriorityToTheTemplate() {
+    assertNull(newPolicy(DmeSyncPriorityPolicy.NONE).getPriority(1L << 30));
+  }
+}
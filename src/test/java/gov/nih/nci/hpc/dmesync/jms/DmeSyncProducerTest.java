@@ -0,0 +1,54 @@
+package gov.nih.nci.hpc.dmesync.jms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import gov.nih.nci.hpc.dmesync.DmeSyncWorkflowServiceFactory;
+import gov.nih.nci.hpc.dmesync.dto.DmeSyncMessageDto;
+import gov.nih.nci.hpc.dmesync.service.DmeSyncWorkflowService;
+
+class DmeSyncProducerTest {
+
+  @Test
+  void outstandingObjectsAreSkippedAndReturned() {
+    DmeSyncWorkflowService service = Mockito.mock(DmeSyncWorkflowService.class);
+    DmeSyncWorkflowServiceFactory factory = Mockito.mock(DmeSyncWorkflowServiceFactory.class);
+    when(factory.getService(any())).thenReturn(service);
+    DmeSyncRunTracker runTracker = new DmeSyncRunTracker();
+
+    DmeSyncProducer producer = new DmeSyncProducer();
+    ReflectionTestUtils.setField(producer, "outboxEnabled", true);
+    ReflectionTestUtils.setField(producer, "serverId", "node1");
+    ReflectionTestUtils.setField(producer, "doc", "doc");
+    ReflectionTestUtils.setField(producer, "access", "local");
+    ReflectionTestUtils.setField(producer, "dmeSyncWorkflowService", factory);
+    ReflectionTestUtils.setField(producer, "jmsTemplate", Mockito.mock(JmsTemplate.class));
+    ReflectionTestUtils.setField(producer, "runTracker", runTracker);
+
+    // 1 is still queued on this node and 2 is leased by another node.
+    runTracker.enqueued(1L);
+    when(service.holdWorkItems(eq(List.of(2L, 3L)), eq("doc"), eq("node1"), isNull()))
+        .thenReturn(List.of(3L));
+
+    List<DmeSyncMessageDto> messages = new ArrayList<>();
+    for (long objectId = 1; objectId <= 3; objectId++) {
+      messages.add(new DmeSyncMessageDto(objectId));
+    }
+    assertEquals(List.of(1L, 2L), producer.send(messages, "inbound.queue"));
+    assertTrue(runTracker.isOutstanding(3L));
+    assertFalse(runTracker.isOutstanding(2L));
+  }
+}
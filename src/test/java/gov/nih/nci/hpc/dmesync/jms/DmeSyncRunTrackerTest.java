@@ -0,0 +1,85 @@
+package gov.nih.nci.hpc.dmesync.jms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class DmeSyncRunTrackerTest {
+
+  @Test
+  void completesOnceWhenTheLastObjectFinishesAfterTheRunEnds() throws InterruptedException {
+    DmeSyncRunTracker tracker = new DmeSyncRunTracker();
+    AtomicInteger completions = new AtomicInteger();
+    CountDownLatch completed = new CountDownLatch(1);
+    tracker.setCompletionListener(
+        () -> {
+          completions.incrementAndGet();
+          completed.countDown();
+        });
+
+    tracker.startRun();
+    tracker.enqueued(1L);
+    tracker.enqueued(2L);
+    // Nothing completes while the scheduler is still enqueuing.
+    tracker.finished(1L);
+    tracker.endRun();
+    assertEquals(1, tracker.getOutstandingCount());
+    // A redelivered object is tracked once.
+    tracker.enqueued(2L);
+    tracker.finished(2L);
+    tracker.finished(2L);
+
+    assertTrue(completed.await(10, TimeUnit.SECONDS));
+    assertEquals(0, tracker.getOutstandingCount());
+    assertFalse(tracker.hasPendingRun());
+    Thread.sleep(100);
+    assertEquals(1, completions.get());
+  }
+
+  @Test
+  void aRunThatEnqueuesNothingCompletesWhenItEnds() throws InterruptedException {
+    DmeSyncRunTracker tracker = new DmeSyncRunTracker();
+    CountDownLatch completed = new CountDownLatch(1);
+    tracker.setCompletionListener(completed::countDown);
+
+    tracker.enqueued(1L);
+    tracker.startRun();
+    tracker.endRun();
+    // Objects of an earlier run still outstanding hold the completion back.
+    assertFalse(completed.await(200, TimeUnit.MILLISECONDS));
+
+    tracker.finished(1L);
+    assertTrue(completed.await(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void clearingTheOutstandingObjectsLetsTheNextRunComplete() throws InterruptedException {
+    DmeSyncRunTracker tracker = new DmeSyncRunTracker();
+    AtomicInteger completions = new AtomicInteger();
+    tracker.setCompletionListener(completions::incrementAndGet);
+
+    assertFalse(tracker.hasPendingRun());
+    tracker.startRun();
+    tracker.enqueued(1L);
+    tracker.endRun();
+    assertTrue(tracker.hasPendingRun());
+    // The message of 1 went to the dead letter queue, the fallback drops it without a completion.
+    assertEquals(1, tracker.clearOutstanding());
+    assertEquals(0, tracker.getOutstandingCount());
+    assertFalse(tracker.hasPendingRun());
+    Thread.sleep(100);
+    assertEquals(0, completions.get());
+
+    CountDownLatch completed = new CountDownLatch(1);
+    tracker.setCompletionListener(completed::countDown);
+    tracker.startRun();
+    tracker.endRun();
+    assertTrue(completed.await(10, TimeUnit.SECONDS));
+  }
+}
@@ -0,0 +1,160 @@
+package gov.nih.nci.hpc.dmesync.jms;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import gov.nih.nci.hpc.dmesync.DmeSyncWorkflowServiceFactory;
+import gov.nih.nci.hpc.dmesync.domain.WorkItem;
+import gov.nih.nci.hpc.dmesync.dto.DmeSyncMessageDto;
+import gov.nih.nci.hpc.dmesync.service.DmeSyncWorkflowRunLogService;
+import gov.nih.nci.hpc.dmesync.service.DmeSyncWorkflowService;
+
+class DmeSyncWorkItemClaimerTest {
+
+  private final DmeSyncWorkflowService service = Mockito.mock(DmeSyncWorkflowService.class);
+  private final DmeSyncWorkflowRunLogService runLogService = Mockito.mock(DmeSyncWorkflowRunLogService.class);
+  private final DmeSyncProducer sender = Mockito.mock(DmeSyncProducer.class);
+  private final DmeSyncWorkItemClaimer claimer = new DmeSyncWorkItemClaimer();
+
+  private DmeSyncWorkItemClaimer newClaimer(long leaseSeconds) {
+    return newClaimer(leaseSeconds, 60000);
+  }
+
+  private DmeSyncWorkItemClaimer newClaimer(long leaseSeconds, long claimIntervalMillis) {
+    DmeSyncWorkflowServiceFactory factory = Mockito.mock(DmeSyncWorkflowServiceFactory.class);
+    when(factory.getService(any())).thenReturn(service);
+    ReflectionTestUtils.setField(claimer, "clusterEnabled", true);
+    ReflectionTestUtils.setField(claimer, "claimSize", 10);
+    ReflectionTestUtils.setField(claimer, "leaseSeconds", leaseSeconds);
+    ReflectionTestUtils.setField(claimer, "claimIntervalMillis", claimIntervalMillis);
+    ReflectionTestUtils.setField(claimer, "serverId", "node1");
+    ReflectionTestUtils.setField(claimer, "doc", "doc");
+    ReflectionTestUtils.setField(claimer, "access", "local");
+    ReflectionTestUtils.setField(claimer, "sender", sender);
+    ReflectionTestUtils.setField(claimer, "runTracker", new DmeSyncRunTracker());
+    ReflectionTestUtils.setField(claimer, "dmeSyncWorkflowService", factory);
+    ReflectionTestUtils.setField(claimer, "dmeSyncWorkflowRunLogService", runLogService);
+    ReflectionTestUtils.invokeMethod(claimer, "init");
+    return claimer;
+  }
+
+  @AfterEach
+  void shutdown() {
+    ReflectionTestUtils.invokeMethod(claimer, "shutdown");
+  }
+
+  @Test
+  void leasesAreRenewedWhileTheSchedulerThreadIsBusy() {
+    newClaimer(1);
+    verify(runLogService).releaseWorkItemLeases("node1");
+
+    // The scheduler thread is scanning and never gets to claimWorkItems, the leases are renewed
+    // several times within the length of one lease anyway.
+    long start = System.currentTimeMillis();
+    ArgumentCaptor<Timestamp> leaseExpiration = ArgumentCaptor.forClass(Timestamp.class);
+    verify(runLogService, timeout(5000).atLeast(3)).renewWorkItemLeases(eq("node1"), leaseExpiration.capture());
+    verify(service, never()).claimWorkItems(anyString(), anyString(), anyInt(), any());
+    for (Timestamp expiration : leaseExpiration.getAllValues()) {
+      assertTrue(expiration.getTime() > start);
+    }
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  @Test
+  void claimsWhileTheQueueRunsLow() {
+    newClaimer(300);
+    WorkItem large = new WorkItem();
+    large.setObjectId(5L);
+    large.setPriority(8);
+    WorkItem unknown = new WorkItem();
+    unknown.setObjectId(6L);
+    when(sender.getQueueCount("inbound.queue")).thenReturn(7);
+    when(service.claimWorkItems(eq("doc"), eq("node1"), eq(3), any())).thenReturn(List.of(large, unknown));
+
+    claimer.claimWorkItems();
+
+    ArgumentCaptor<List<DmeSyncMessageDto>> messages = ArgumentCaptor.forClass((Class) List.class);
+    verify(sender).sendClaimed(messages.capture(), eq("inbound.queue"));
+    assertEquals(2, messages.getValue().size());
+    assertEquals(5L, messages.getValue().get(0).getObjectId());
+    assertEquals(8, messages.getValue().get(0).getPriority());
+    assertEquals(6L, messages.getValue().get(1).getObjectId());
+    assertNull(messages.getValue().get(1).getPriority());
+  }
+
+  @Test
+  void aFullQueueClaimsNothing() {
+    newClaimer(300);
+    when(sender.getQueueCount("inbound.queue")).thenReturn(10);
+
+    claimer.claimWorkItems();
+
+    verify(service, never()).claimWorkItems(anyString(), anyString(), anyInt(), any());
+    verify(sender, never()).sendClaimed(any(), any());
+  }
+
+  @Test
+  void claimsOnItsOwnThreadWhileTheSchedulerThreadIsBusy() {
+    newClaimer(300, 50);
+    when(sender.getQueueCount("inbound.queue")).thenReturn(0);
+
+    // Nothing calls claimWorkItems, the claim thread claims on its own.
+    verify(service, timeout(5000).atLeast(2)).claimWorkItems(eq("doc"), eq("node1"), eq(10), any());
+  }
+
+  @Test
+  void theRunIsCheckedOnceTheClaimTableIsDrained() {
+    newClaimer(300);
+    AtomicInteger checked = new AtomicInteger();
+    claimer.runWhenDrained(checked::incrementAndGet);
+
+    when(service.countWorkItems("doc")).thenReturn(2L);
+    claimer.claimCycle();
+    assertEquals(0, checked.get());
+
+    when(service.countWorkItems("doc")).thenReturn(0L);
+    claimer.claimCycle();
+    claimer.claimCycle();
+    assertEquals(1, checked.get());
+  }
+
+  @Test
+  void aClearedListenerIsNotRun() {
+    newClaimer(300);
+    AtomicInteger checked = new AtomicInteger();
+    claimer.runWhenDrained(checked::incrementAndGet);
+    claimer.runWhenDrained(null);
+
+    claimer.claimCycle();
+
+    assertEquals(0, checked.get());
+    verify(service, never()).countWorkItems(anyString());
+  }
+
+  @Test
+  void anEndedObjectDeletesItsWorkItem() {
+    newClaimer(300);
+    claimer.ended(5L);
+    verify(service).deleteWorkItem(5L);
+  }
+}
@@ -0,0 +1,77 @@
+package gov.nih.nci.hpc.dmesync.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import gov.nih.nci.hpc.dmesync.dao.WorkItemDao;
+import gov.nih.nci.hpc.dmesync.domain.WorkItem;
+
+class DmeSyncWorkflowServiceImplWorkItemTest {
+
+  private static WorkItem workItem(Long objectId, String claimedBy, Timestamp leaseExpiration) {
+    WorkItem workItem = new WorkItem();
+    workItem.setObjectId(objectId);
+    workItem.setDoc("doc");
+    workItem.setClaimedBy(claimedBy);
+    workItem.setLeaseExpiration(leaseExpiration);
+    return workItem;
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  @Test
+  void holdWorkItemsTakesOverLapsedLeasesAndSkipsCurrentOnes() {
+    DmeSyncWorkflowServiceImpl service = new DmeSyncWorkflowServiceImpl();
+    WorkItemDao<WorkItem> workItemDao = Mockito.mock(WorkItemDao.class);
+    ReflectionTestUtils.setField(service, "workItemDao", workItemDao);
+
+    long now = System.currentTimeMillis();
+    WorkItem leased = workItem(2L, "node2", new Timestamp(now + 60000));
+    WorkItem expired = workItem(3L, "node3", new Timestamp(now - 60000));
+    WorkItem unclaimed = workItem(4L, null, null);
+    List<Long> objectIds = List.of(1L, 2L, 3L, 4L);
+    when(workItemDao.findAllById(objectIds)).thenReturn(List.of(leased, expired, unclaimed));
+
+    Timestamp leaseExpiration = new Timestamp(now + 300000);
+    assertEquals(List.of(1L, 3L, 4L), service.holdWorkItems(objectIds, "doc", "node1", leaseExpiration));
+
+    ArgumentCaptor<List<WorkItem>> saved = ArgumentCaptor.forClass((Class) List.class);
+    verify(workItemDao).saveAll(saved.capture());
+    assertEquals(3, saved.getValue().size());
+    for (WorkItem workItem : saved.getValue()) {
+      assertEquals("node1", workItem.getClaimedBy());
+      assertEquals(leaseExpiration, workItem.getLeaseExpiration());
+    }
+    // The work item leased by another node is left to it.
+    assertEquals("node2", leased.getClaimedBy());
+  }
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  @Test
+  void saveAllWorkItemsInsertsOnlyTheObjectsWithoutOne() {
+    DmeSyncWorkflowServiceImpl service = new DmeSyncWorkflowServiceImpl();
+    WorkItemDao<WorkItem> workItemDao = Mockito.mock(WorkItemDao.class);
+    ReflectionTestUtils.setField(service, "workItemDao", workItemDao);
+
+    WorkItem claimed = workItem(2L, "node2", new Timestamp(System.currentTimeMillis() + 60000));
+    when(workItemDao.findAllById(List.of(1L, 2L))).thenReturn(List.of(claimed));
+
+    service.saveAllWorkItems(List.of(workItem(1L, null, null), workItem(2L, null, null)));
+
+    ArgumentCaptor<List<WorkItem>> saved = ArgumentCaptor.forClass((Class) List.class);
+    verify(workItemDao).saveAll(saved.capture());
+    assertEquals(1, saved.getValue().size());
+    assertEquals(1L, saved.getValue().get(0).getObjectId());
+    // Inserted without being looked up first.
+    assertTrue(saved.getValue().get(0).isNew());
+  }
+}
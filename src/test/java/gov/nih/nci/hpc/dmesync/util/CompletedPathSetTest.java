@@ -0,0 +1,40 @@
+package gov.nih.nci.hpc.dmesync.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CompletedPathSetTest {
+
+  @TempDir
+  Path dir;
+
+  @Test
+  void pathsAddedAfterSavingAreKeptOnDisk() throws IOException {
+    File file = dir.resolve("completed.bin").toFile();
+    assertNull(CompletedPathSet.load(file));
+
+    CompletedPathSet set = new CompletedPathSet(file);
+    for (int i = 0; i < 5000; i++) set.add("/data/run1/file" + i + ".mrc", "/work/run1/file" + i + ".mrc");
+    set.save();
+    set.add("/data/run2", "/work/run2.tar");
+
+    CompletedPathSet loaded = CompletedPathSet.load(file);
+    assertEquals(10002, loaded.size());
+    assertTrue(loaded.containsOriginalFilePath("/data/run1/file4999.mrc"));
+    assertTrue(loaded.containsSourceFilePath("/work/run1/file0.mrc"));
+    assertTrue(loaded.containsOriginalFilePath("/data/run2"));
+    assertTrue(loaded.containsSourceFilePath("/work/run2.tar"));
+    // Original and source paths are kept apart.
+    assertFalse(loaded.containsOriginalFilePath("/work/run2.tar"));
+    assertFalse(loaded.containsOriginalFilePath("/data/run1/file5000.mrc"));
+  }
+}
@@ -0,0 +1,204 @@
+package gov.nih.nci.hpc.dmesync.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class GlobScannerTest {
+
+  @TempDir
+  Path root;
+
+  private void createTree() throws IOException {
+    for (String run : new String[] {"run2", "run1"}) {
+      for (String folder : new String[] {"movies", "metadata", "gain"}) {
+        Path dir = Files.createDirectories(root.resolve(run).resolve(folder).resolve("sub"));
+        Files.writeString(dir.resolve("b.mrc"), "b");
+        Files.writeString(dir.getParent().resolve("a.mrc"), "a");
+        Files.writeString(dir.getParent().resolve("archive.json"), "{}");
+      }
+    }
+  }
+
+  private List<String> scan(List<String> includes, List<String> excludes, int depth, int parallelism) {
+    return new GlobScanner(root.toFile(), new ArrayList<>(includes), new ArrayList<>(excludes), false, depth,
+        parallelism).matches();
+  }
+
+  @Test
+  void parallelScanReturnsSameMatchesInSameOrder() throws IOException {
+    createTree();
+    List<String> includes = Arrays.asList("*", "*/**");
+    List<String> excludes = Arrays.asList("**/archive.json*", "*/gain/**");
+
+    List<String> sequential = scan(includes, excludes, 0, 1);
+    List<String> parallel = scan(includes, excludes, 0, 4);
+
+    assertEquals(sequential, parallel);
+    assertEquals(
+        Arrays.asList("run1", "run1/metadata", "run1/metadata/a.mrc", "run1/metadata/sub",
+            "run1/metadata/sub/b.mrc", "run1/movies", "run1/movies/a.mrc", "run1/movies/sub",
+            "run1/movies/sub/b.mrc", "run2", "run2/metadata", "run2/metadata/a.mrc",
+            "run2/metadata/sub", "run2/metadata/sub/b.mrc", "run2/movies", "run2/movies/a.mrc", "run2/movies/sub",
+            "run2/movies/sub/b.mrc"),
+        sequential);
+  }
+
+  @Test
+  void parallelScanHonorsDepth() throws IOException {
+    createTree();
+    List<String> includes = Arrays.asList("*", "*/**");
+
+    assertEquals(scan(includes, List.of(), 2, 1), scan(includes, List.of(), 2, 3));
+    assertEquals(Arrays.asList("run1", "run2"), scan(includes, List.of(), 1, 3));
+  }
+
+  @Test
+  void excludedFolderIsPrunedAndFileNameExcludeOnlyDropsTheEntry() throws IOException {
+    createTree();
+    List<String> includes = Arrays.asList("run1/**");
+    List<String> excludes = Arrays.asList("run1/metadata", "*/gain/**", "**/sub");
+
+    assertEquals(
+        Arrays.asList("run1", "run1/movies", "run1/movies/a.mrc", "run1/movies/archive.json",
+            "run1/movies/sub/b.mrc"),
+        scan(includes, excludes, 0, 1));
+  }
+
+  @Test
+  void matchesCarryAttributesReadDuringScan() throws IOException {
+    createTree();
+    List<GlobScanner.Match> entries = new GlobScanner(root.toFile(), new ArrayList<>(List.of("run1/movies/**")),
+        new ArrayList<>(), false, 0, 2).entries();
+
+    assertEquals(5, entries.size());
+    for (GlobScanner.Match match : entries) {
+      Path file = root.resolve(match.path);
+      assertEquals(Files.isDirectory(file), match.attributes.isDirectory());
+      assertEquals(Files.getLastModifiedTime(file), match.attributes.lastModifiedTime());
+      if (!Files.isDirectory(file)) assertEquals(Files.size(file), match.attributes.size());
+    }
+    assertTrue(entries.get(0).attributes.isDirectory());
+    assertFalse(entries.get(1).attributes.isDirectory());
+  }
+
+  @Test
+  void sinkReceivesMatchesWhileScanning() throws IOException {
+    createTree();
+    List<String> includes = Arrays.asList("*", "*/**");
+    List<String> excludes = Arrays.asList("*/gain/**");
+    List<String> streamed = new ArrayList<>();
+
+    GlobScanner scanner = new GlobScanner(root.toFile(), new ArrayList<>(includes), new ArrayList<>(excludes), false, 0,
+        1, match -> streamed.add(match.path));
+
+    assertTrue(scanner.matches().isEmpty());
+    // Directories are passed on after their contents.
+    assertTrue(streamed.indexOf("run1/movies/a.mrc") < streamed.indexOf("run1/movies"));
+    streamed.sort(null);
+    assertEquals(scan(includes, excludes, 0, 1), streamed);
+  }
+
+  @Test
+  void scannedDirectoriesCarryTheirListing() throws IOException {
+    createTree();
+    Files.createDirectories(root.resolve("run1/empty"));
+
+    for (int parallelism : new int[] {1, 3}) {
+      List<GlobScanner.Match> entries = new ArrayList<>();
+      new GlobScanner(root.toFile(), new ArrayList<>(List.of("*", "*/**")), new ArrayList<>(), false, 0, false,
+          parallelism, entries::add, null);
+      for (GlobScanner.Match match : entries) {
+        if (!match.attributes.isDirectory()) continue;
+        GlobScanner.DirectoryAttributes attributes = (GlobScanner.DirectoryAttributes) match.attributes;
+        boolean leaf = match.path.endsWith("sub") || match.path.endsWith("empty");
+        assertEquals(root.resolve(match.path).toFile().list().length, attributes.childCount);
+        assertEquals(!leaf, attributes.hasSubdirectories);
+      }
+    }
+  }
+
+  @Test
+  void compiledPatternWalksWithoutState() {
+    GlobScanner.Pattern pattern = new GlobScanner.Pattern("RUN*/**/sub/*.mrc", true);
+
+    int state = pattern.next(0, "run1");
+    assertEquals(1, state);
+    // "**" stays put until an entry matches the segment after it.
+    assertEquals(1, pattern.next(state, "movies"));
+    state = pattern.next(state, "sub");
+    assertEquals(3, state);
+    assertTrue(pattern.matches(state, "b.mrc"));
+    assertFalse(pattern.matches(state, "b.tif"));
+    assertTrue(pattern.isFinal(pattern.next(state, "b.mrc")));
+    // The same instance can be used from any state again.
+    assertTrue(pattern.matches(0, "run2"));
+    assertFalse(pattern.isFinal(1));
+  }
+
+  @Test
+  void exactDepthOnlyMatchesEntriesAtTheDepth() throws IOException {
+    createTree();
+    List<String> includes = Arrays.asList("*", "*/**");
+    List<String> excludes = Arrays.asList("**/archive.json");
+
+    for (int parallelism : new int[] {1, 3}) {
+      List<String> expected = new ArrayList<>();
+      for (String path : scan(includes, excludes, 2, parallelism))
+        if (path.split("/").length == 2) expected.add(path);
+      List<String> exact = new GlobScanner(root.toFile(), new ArrayList<>(includes), new ArrayList<>(excludes), false, 2,
+          true, parallelism, null, null).matches();
+
+      assertEquals(expected, exact);
+      assertEquals(Arrays.asList("run1/gain", "run1/metadata", "run1/movies", "run2/gain", "run2/metadata",
+          "run2/movies"), exact);
+    }
+  }
+
+  @Test
+  void exactDepthDirectoriesCarryTheirEntryCount() throws IOException {
+    createTree();
+    Files.createDirectories(root.resolve("run1/empty"));
+
+    for (int parallelism : new int[] {1, 3}) {
+      List<GlobScanner.Match> entries = new ArrayList<>();
+      new GlobScanner(root.toFile(), new ArrayList<>(List.of("*", "*/**")), new ArrayList<>(), false, 2, true,
+          parallelism, entries::add, null);
+      assertFalse(entries.isEmpty());
+      for (GlobScanner.Match match : entries) {
+        if (!match.attributes.isDirectory()) continue;
+        GlobScanner.DirectoryAttributes attributes = (GlobScanner.DirectoryAttributes) match.attributes;
+        assertEquals(root.resolve(match.path).toFile().list().length, attributes.childCount);
+        assertNull(attributes.hasSubdirectories);
+      }
+    }
+  }
+
+  @Test
+  void scopeOnlyMatchesTheScopedDirectoriesAndTheirEntries() throws IOException {
+    createTree();
+    File canonical = root.toFile().getCanonicalFile();
+    List<File> scope = Arrays.asList(new File(canonical, "run1/movies"), new File(canonical, "run2/gain/sub"));
+
+    for (int parallelism : new int[] {1, 3}) {
+      List<String> scoped = new GlobScanner(root.toFile(), new ArrayList<>(List.of("*", "*/**")),
+          new ArrayList<>(List.of("**/archive.json")), false, 0, false, parallelism, null, null, null, null, scope)
+          .matches();
+
+      assertEquals(Arrays.asList("run1/movies", "run1/movies/a.mrc", "run1/movies/sub", "run2/gain/sub",
+          "run2/gain/sub/b.mrc"), scoped);
+    }
+  }
+}
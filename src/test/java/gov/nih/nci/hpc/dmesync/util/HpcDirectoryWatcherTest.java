@@ -0,0 +1,109 @@
+package gov.nih.nci.hpc.dmesync.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HpcDirectoryWatcherTest {
+
+  @TempDir
+  Path tempDir;
+
+  private Path root;
+
+  private HpcDirectoryWatcher watcher;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    root = tempDir.toRealPath();
+  }
+
+  @AfterEach
+  void close() throws IOException {
+    if (watcher != null) watcher.close();
+  }
+
+  private HpcDirectoryWatcher watch(List<String> excludes, int maxDepth) throws Exception {
+    watcher = new HpcDirectoryWatcher(List.of(root), excludes, maxDepth);
+    watcher.awaitRegistration();
+    return watcher;
+  }
+
+  /** Polls until the directory has settled, collecting every directory that settled meanwhile. */
+  private Set<Path> awaitSettled(Path dir) throws Exception {
+    Set<Path> settled = new HashSet<>();
+    long deadline = System.currentTimeMillis() + 5000;
+    while (!settled.contains(dir) && System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+      watcher.poll();
+      settled.addAll(watcher.takeSettled(0));
+    }
+    assertTrue(settled.contains(dir), dir + " did not settle, got " + settled);
+    return settled;
+  }
+
+  @Test
+  void aCreatedFileSettlesOnceItsDirectoryIsQuiet() throws Exception {
+    watch(null, -1);
+    Files.writeString(root.resolve("a.txt"), "a");
+
+    long deadline = System.currentTimeMillis() + 5000;
+    List<Path> settled = List.of();
+    while (System.currentTimeMillis() < deadline) {
+      Thread.sleep(20);
+      watcher.poll();
+      // Still within the quiet period.
+      assertTrue(watcher.takeSettled(60000).isEmpty());
+      settled = watcher.takeSettled(0);
+      if (!settled.isEmpty()) break;
+    }
+
+    assertEquals(List.of(root), settled);
+    // Handed out once per change.
+    watcher.poll();
+    assertTrue(watcher.takeSettled(0).isEmpty());
+  }
+
+  @Test
+  void aNewSubdirectoryIsWatched() throws Exception {
+    watch(null, -1);
+    Path sub = root.resolve("sub");
+    Files.createDirectory(sub);
+    awaitSettled(root);
+    watcher.awaitRegistration();
+    watcher.takeSettled(0);
+
+    Files.writeString(sub.resolve("b.txt"), "b");
+
+    assertEquals(Set.of(sub), awaitSettled(sub));
+  }
+
+  @Test
+  void excludedAndDeeperDirectoriesAreNotWatched() throws Exception {
+    Files.createDirectories(root.resolve("tmp/x"));
+    Files.createDirectories(root.resolve("a/b"));
+    watch(List.of("tmp/**", "**/a"), 1);
+
+    Files.writeString(root.resolve("tmp/x/f"), "f");
+    Files.writeString(root.resolve("a/b/f"), "f");
+    Files.writeString(root.resolve("a/f"), "f");
+    Set<Path> settled = awaitSettled(root.resolve("a"));
+    Thread.sleep(200);
+    watcher.poll();
+    settled.addAll(watcher.takeSettled(0));
+
+    // "**/a" only drops the entry from the scan, the folder is still scanned and watched.
+    assertEquals(Set.of(root.resolve("a")), settled);
+  }
+}
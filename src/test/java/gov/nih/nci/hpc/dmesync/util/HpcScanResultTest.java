@@ -0,0 +1,121 @@
+package gov.nih.nci.hpc.dmesync.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class HpcScanResultTest {
+
+  @TempDir
+  Path root;
+
+  private void createTree(Path dir) throws IOException {
+    for (String folder : new String[] {"movies", "metadata", "movies-raw"}) {
+      Path sub = Files.createDirectories(dir.resolve(folder).resolve("sub"));
+      Files.writeString(sub.resolve("b.mrc"), "bb");
+      Files.writeString(sub.getParent().resolve("a.mrc"), "a");
+    }
+  }
+
+  private HpcScanResult scan(Path dir, List<String> includes, int parallelism) throws IOException {
+    String rootDir = dir.toFile().getCanonicalPath();
+    HpcScanResult result = new HpcScanResult(rootDir);
+    new GlobScanner(dir.toFile(), new ArrayList<>(includes), new ArrayList<>(), false, 0, false, parallelism,
+        match -> result.add(rootDir + "/" + match.path, match.attributes), null);
+    result.complete();
+    return result;
+  }
+
+  private List<String> paths(List<HpcPathAttributes> result) {
+    List<String> paths = new ArrayList<>();
+    for (HpcPathAttributes pathAttributes : result) paths.add(pathAttributes.getAbsolutePath());
+    return paths;
+  }
+
+  @Test
+  void keepsTheOrderOfASequentialScan() throws IOException {
+    createTree(root);
+    List<String> includes = Arrays.asList("*", "*/**");
+    String rootDir = root.toFile().getCanonicalPath();
+    List<String> expected = new ArrayList<>();
+    for (String path : new GlobScanner(root.toFile(), new ArrayList<>(includes), new ArrayList<>(), false, 0, 1)
+        .matches())
+      expected.add(rootDir + File.separator + path);
+
+    assertEquals(expected, paths(scan(root, includes, 1)));
+    assertEquals(expected, paths(scan(root, includes, 3)));
+  }
+
+  @Test
+  void viewsCarryTheScannedAttributes() throws IOException {
+    createTree(root);
+    HpcScanResult result = scan(root, Arrays.asList("**/sub", "**/sub/*"), 1);
+
+    assertEquals(6, result.size());
+    HpcPathAttributes dir = result.get(0);
+    assertTrue(dir.getIsDirectory());
+    assertEquals("sub", dir.getName());
+    assertEquals(Integer.valueOf(1), dir.getChildCount());
+    assertFalse(dir.getHasSubdirectories());
+    HpcPathAttributes file = result.get(1);
+    assertEquals(root.resolve("metadata/sub/b.mrc").toFile().getCanonicalPath(), file.getPath());
+    assertEquals(2, file.getSize());
+    assertEquals(Files.getLastModifiedTime(root.resolve("metadata/sub/b.mrc")).toMillis(),
+        file.getUpdatedDate().getTime());
+  }
+
+  @Test
+  void selectAndJoinKeepTheOrder() throws IOException {
+    Path run1 = Files.createDirectories(root.resolve("run1"));
+    Path run2 = Files.createDirectories(root.resolve("run2"));
+    createTree(run2);
+    createTree(run1);
+    List<String> includes = Arrays.asList("*", "*/**");
+
+    HpcScanResult joined = HpcScanResult.join(Arrays.asList(scan(run2, includes, 1), scan(run1, includes, 2)));
+    List<String> expected = new ArrayList<>(paths(scan(run2, includes, 1)));
+    expected.addAll(paths(scan(run1, includes, 1)));
+    assertEquals(expected, paths(joined));
+
+    List<HpcPathAttributes> files = HpcScanResult.select(joined, p -> !p.getIsDirectory());
+    assertTrue(files instanceof HpcScanResult);
+    List<String> expectedFiles = new ArrayList<>();
+    for (String path : expected) if (path.endsWith(".mrc")) expectedFiles.add(path);
+    assertEquals(expectedFiles, paths(files));
+  }
+
+  @Test
+  void scannedDirectoriesCarryTheSizeOfTheirFiles() throws IOException {
+    createTree(root);
+    for (int parallelism : new int[] {1, 3}) {
+      HpcScanResult result = scan(root, Arrays.asList("*", "*/**"), parallelism);
+
+      for (HpcPathAttributes pathAttributes : result) {
+        if (pathAttributes.getName().equals("movies")) assertEquals(Long.valueOf(3), pathAttributes.getContentSize());
+        if (pathAttributes.getName().equals("sub")) assertEquals(Long.valueOf(2), pathAttributes.getContentSize());
+        if (!pathAttributes.getIsDirectory()) assertNull(pathAttributes.getContentSize());
+      }
+    }
+
+    // Not descended into at the exact depth, so its size is not known.
+    String rootDir = root.toFile().getCanonicalPath();
+    HpcScanResult folders = new HpcScanResult(rootDir);
+    new GlobScanner(root.toFile(), new ArrayList<>(Arrays.asList("*", "*/**")), new ArrayList<>(), false, 1, true, 1,
+        match -> folders.add(rootDir + "/" + match.path, match.attributes), null);
+    folders.complete();
+    assertEquals(3, folders.size());
+    assertNull(folders.get(0).getContentSize());
+  }
+}
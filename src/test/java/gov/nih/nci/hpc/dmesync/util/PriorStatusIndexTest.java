@@ -0,0 +1,35 @@
+package gov.nih.nci.hpc.dmesync.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import gov.nih.nci.hpc.dmesync.domain.StatusInfo;
+import java.util.Date;
+
+import org.junit.jupiter.api.Test;
+
+class PriorStatusIndexTest {
+
+  @Test
+  void latestRowsAreKeptPerPath() {
+    PriorStatusIndex index = new PriorStatusIndex();
+    index.add("/data/a.mrc", 1L, WorkflowConstants.COMPLETED, new Date(1000), new Date(1100));
+    index.add("/data/a.mrc", 3L, WorkflowConstants.FAILED, new Date(3000), null);
+    index.add("/data/a.mrc", 2L, WorkflowConstants.COMPLETED, new Date(2000), new Date(2100));
+    index.add("/data/b.mrc", 4L, WorkflowConstants.FAILED, new Date(1000), null);
+
+    StatusInfo completed = index.findNoReRunStatusInfo("/data/a.mrc");
+    assertEquals(Long.valueOf(2), completed.getId());
+    assertEquals(new Date(2100), completed.getUploadStartTimestamp());
+    assertEquals(Long.valueOf(3), index.findLatestId("/data/a.mrc"));
+
+    assertTrue(index.contains("/data/b.mrc"));
+    assertNull(index.findNoReRunStatusInfo("/data/b.mrc"));
+    assertEquals(Long.valueOf(4), index.findLatestId("/data/b.mrc"));
+
+    assertFalse(index.contains("/data/c.mrc"));
+    assertNull(index.findLatestId("/data/c.mrc"));
+  }
+}
@@ -0,0 +1,81 @@
+package gov.nih.nci.hpc.dmesync.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ScanCheckpointTest {
+
+  @TempDir
+  Path root;
+
+  @TempDir
+  Path checkpointDir;
+
+  private void createTree() throws IOException {
+    for (String run : new String[] {"run1", "run2"}) {
+      for (String folder : new String[] {"movies", "metadata"}) {
+        Path dir = Files.createDirectories(root.resolve(run).resolve(folder));
+        Files.writeString(dir.resolve("a.mrc"), "a");
+      }
+    }
+  }
+
+  private List<String> scan(ScanCheckpoint checkpoint, String failAt) {
+    List<String> found = new ArrayList<>();
+    new GlobScanner(root.toFile(), new ArrayList<>(List.of("**")), new ArrayList<>(), false, 0, false, 1,
+        match -> {
+          if (match.path.equals(failAt)) throw new IllegalStateException("Interrupted at " + failAt);
+          found.add(match.path);
+        }, null, checkpoint, null);
+    return found;
+  }
+
+  @Test
+  void interruptedScanContinuesAfterTheCompletedDirectories() throws IOException {
+    createTree();
+    ScanCheckpoint checkpoint = ScanCheckpoint.load(checkpointDir.toString(), root.toString());
+    checkpoint.start("Run_1");
+    assertThrows(IllegalStateException.class, () -> scan(checkpoint, "run2/metadata/a.mrc"));
+    // Completing run1 dropped the directories under it.
+    String run1 = new File(root.toFile().getCanonicalFile(), "run1").getPath();
+    assertEquals(List.of(run1), checkpoint.snapshot());
+    checkpoint.save(checkpoint.snapshot());
+
+    ScanCheckpoint resumed = ScanCheckpoint.load(checkpointDir.toString(), root.toString());
+    assertEquals("Run_1", resumed.getRunId());
+    resumed.start("Run_1");
+    assertEquals(
+        Arrays.asList("run2/metadata/a.mrc", "run2/metadata", "run2/movies/a.mrc", "run2/movies", "run2"),
+        scan(resumed, null));
+    assertEquals(List.of(root.toFile().getCanonicalPath()), resumed.snapshot());
+
+    resumed.delete();
+    ScanCheckpoint next = ScanCheckpoint.load(checkpointDir.toString(), root.toString());
+    assertNull(next.getRunId());
+  }
+
+  @Test
+  void anotherRunStartsOver() throws IOException {
+    createTree();
+    ScanCheckpoint checkpoint = ScanCheckpoint.load(checkpointDir.toString(), root.toString());
+    checkpoint.start("Run_1");
+    assertThrows(IllegalStateException.class, () -> scan(checkpoint, "run2"));
+    checkpoint.save(checkpoint.snapshot());
+
+    ScanCheckpoint other = ScanCheckpoint.load(checkpointDir.toString(), root.toString());
+    other.start("Run_2");
+    assertEquals(10, scan(other, null).size());
+  }
+}
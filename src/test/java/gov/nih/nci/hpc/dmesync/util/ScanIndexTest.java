@@ -0,0 +1,128 @@
+package gov.nih.nci.hpc.dmesync.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ScanIndexTest {
+
+  private static final FileTime LAST_WEEK =
+      FileTime.fromMillis(System.currentTimeMillis() - 7L * 24 * 60 * 60 * 1000);
+
+  @TempDir
+  Path root;
+
+  @TempDir
+  Path indexDir;
+
+  private List<String> scan() {
+    ScanIndex index = ScanIndex.load(indexDir.toString(), root.toString());
+    List<String> matches =
+        new GlobScanner(root.toFile(), new ArrayList<>(Arrays.asList("*", "*/**")), new ArrayList<>(), false, 0, false,
+            1, null, index).matches();
+    try {
+      index.save();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return matches;
+  }
+
+  @Test
+  void unchangedDirectoriesAreNotListedAgain() throws IOException {
+    Path run = Files.createDirectories(root.resolve("run1"));
+    Files.writeString(run.resolve("a.mrc"), "a");
+    Files.writeString(run.resolve("b.mrc"), "b");
+    Files.setLastModifiedTime(run, LAST_WEEK);
+    Files.setLastModifiedTime(root, LAST_WEEK);
+
+    assertEquals(Arrays.asList("run1", "run1/a.mrc", "run1/b.mrc"), scan());
+
+    // Removing a file and restoring the directory time shows the recorded listing is reused.
+    Files.delete(run.resolve("b.mrc"));
+    Files.setLastModifiedTime(run, LAST_WEEK);
+    assertEquals(Arrays.asList("run1", "run1/a.mrc", "run1/b.mrc"), scan());
+
+    // A directory with a new modification time is listed again.
+    Files.writeString(run.resolve("c.mrc"), "c");
+    Files.setLastModifiedTime(run, FileTime.fromMillis(LAST_WEEK.toMillis() + 1000));
+    assertEquals(Arrays.asList("run1", "run1/a.mrc", "run1/c.mrc"), scan());
+  }
+
+  @Test
+  void recentlyModifiedDirectoriesAreNotRecorded() throws IOException {
+    Path run = Files.createDirectories(root.resolve("run1"));
+    Files.writeString(run.resolve("a.mrc"), "a");
+    Files.setLastModifiedTime(root, LAST_WEEK);
+
+    assertEquals(Arrays.asList("run1", "run1/a.mrc"), scan());
+
+    FileTime modified = Files.getLastModifiedTime(run);
+    Files.delete(run.resolve("a.mrc"));
+    Files.setLastModifiedTime(run, modified);
+    assertEquals(Arrays.asList("run1"), scan());
+  }
+
+  @Test
+  void filesRewrittenInPlaceAreReadAgain() throws IOException {
+    Path run = Files.createDirectories(root.resolve("run1"));
+    Files.writeString(run.resolve("a.mrc"), "a");
+    Files.setLastModifiedTime(run, LAST_WEEK);
+    Files.setLastModifiedTime(root, LAST_WEEK);
+    scan();
+
+    // Rewriting the file does not change the modification time of its directory.
+    Files.writeString(run.resolve("a.mrc"), "abc");
+    Files.setLastModifiedTime(run, LAST_WEEK);
+    ScanIndex index = ScanIndex.load(indexDir.toString(), root.toString());
+    List<GlobScanner.Match> matches = new ArrayList<>();
+    new GlobScanner(root.toFile(), new ArrayList<>(Arrays.asList("*/*.mrc")), new ArrayList<>(), false, 0, false, 1,
+        matches::add, index);
+    assertEquals(1, matches.size());
+    assertEquals(3L, matches.get(0).attributes.size());
+  }
+
+  @Test
+  void subtreesSkippedByAResumedScanKeepTheirListings() throws IOException {
+    for (String name : new String[] {"run1", "run2"}) {
+      Path run = Files.createDirectories(root.resolve(name));
+      Files.writeString(run.resolve("a.mrc"), "a");
+      Files.writeString(run.resolve("b.mrc"), "b");
+      Files.setLastModifiedTime(run, LAST_WEEK);
+    }
+    Files.setLastModifiedTime(root, LAST_WEEK);
+    scan();
+
+    // Resume a scan that completed run1 before it was interrupted.
+    ScanCheckpoint checkpoint = ScanCheckpoint.load(indexDir.toString(), root.toString());
+    checkpoint.start("Run_1");
+    checkpoint.completed(root.resolve("run1").toFile().getCanonicalFile());
+    ScanIndex index = ScanIndex.load(indexDir.toString(), root.toString());
+    List<GlobScanner.Match> matches = new ArrayList<>();
+    new GlobScanner(root.toFile(), new ArrayList<>(Arrays.asList("*", "*/**")), new ArrayList<>(), false, 0, false, 1,
+        matches::add, index, checkpoint, null);
+    index.save();
+    assertEquals(Arrays.asList("run2/a.mrc", "run2/b.mrc", "run2"), paths(matches));
+
+    // The listing of run1 was saved again, so it is still reused.
+    Files.delete(root.resolve("run1").resolve("b.mrc"));
+    Files.setLastModifiedTime(root.resolve("run1"), LAST_WEEK);
+    assertEquals(
+        Arrays.asList("run1", "run1/a.mrc", "run1/b.mrc", "run2", "run2/a.mrc", "run2/b.mrc"), scan());
+  }
+
+  private static List<String> paths(List<GlobScanner.Match> matches) {
+    List<String> paths = new ArrayList<>();
+    for (GlobScanner.Match match : matches) paths.add(match.path);
+    return paths;
+  }
+}
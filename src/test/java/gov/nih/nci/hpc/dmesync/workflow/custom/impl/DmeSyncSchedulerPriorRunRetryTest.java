@@ -3,6 +3,7 @@ package gov.nih.nci.hpc.dmesync.workflow.custom.impl;
 
 import org.junit.jupiter.api.Test;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
@@ -15,6 +16,8 @@ import org.springframework.test.util.ReflectionTestUtils;
 import gov.nih.nci.hpc.dmesync.DmeSyncWorkflowServiceFactory;
 import gov.nih.nci.hpc.dmesync.domain.StatusInfo;
 import gov.nih.nci.hpc.dmesync.dto.DmeSyncMessageDto;
+import gov.nih.nci.hpc.dmesync.jms.DmeSyncAdmissionController;
+import gov.nih.nci.hpc.dmesync.jms.DmeSyncPriorityPolicy;
 import gov.nih.nci.hpc.dmesync.jms.DmeSyncProducer;
 import gov.nih.nci.hpc.dmesync.scheduler.DmeSyncScheduler;
 import gov.nih.nci.hpc.dmesync.service.DmeSyncWorkflowService;
@@ -42,6 +45,10 @@ class DmeSyncSchedulerPriorRunRetryTest {
     DmeSyncScheduler scheduler = new DmeSyncScheduler();
 	
     ReflectionTestUtils.setField(scheduler, "sender", sender);
+    ReflectionTestUtils.setField(scheduler, "admissionController", new DmeSyncAdmissionController());
+    DmeSyncPriorityPolicy priorityPolicy = new DmeSyncPriorityPolicy();
+    ReflectionTestUtils.setField(priorityPolicy, "policy", DmeSyncPriorityPolicy.NONE);
+    ReflectionTestUtils.setField(scheduler, "priorityPolicy", priorityPolicy);
     ReflectionTestUtils.setField(scheduler, "dmeSyncWorkflowService", factory);
 
     ReflectionTestUtils.setField(scheduler, "access", access);
@@ -85,7 +92,9 @@ class DmeSyncSchedulerPriorRunRetryTest {
     ReflectionTestUtils.invokeMethod(scheduler, "includePriorRunFailuresInCurrentRunWorklist");
 
     verify(sender, never()).send(any(DmeSyncMessageDto.class), anyString());
+    verify(sender, never()).send(anyList(), anyString());
     verify(workflowSvc, never()).saveStatusInfo(any());
+    verify(workflowSvc, never()).resetStatusInfoForReattempt(anyList(), anyString());
 
     java.nio.file.Files.deleteIfExists(baseDir);
   }
@@ -112,7 +121,9 @@ class DmeSyncSchedulerPriorRunRetryTest {
     ReflectionTestUtils.invokeMethod(scheduler, "includePriorRunFailuresInCurrentRunWorklist");
 
     verify(sender, never()).send(any(DmeSyncMessageDto.class), anyString());
+    verify(sender, never()).send(anyList(), anyString());
     verify(workflowSvc, never()).saveStatusInfo(any());
+    verify(workflowSvc, never()).resetStatusInfoForReattempt(anyList(), anyString());
 
     java.nio.file.Files.deleteIfExists(baseDir);
   }
@@ -146,7 +157,9 @@ class DmeSyncSchedulerPriorRunRetryTest {
     ReflectionTestUtils.invokeMethod(scheduler, "includePriorRunFailuresInCurrentRunWorklist");
 
     verify(sender, never()).send(any(DmeSyncMessageDto.class), anyString());
+    verify(sender, never()).send(anyList(), anyString());
     verify(workflowSvc, never()).saveStatusInfo(any());
+    verify(workflowSvc, never()).resetStatusInfoForReattempt(anyList(), anyString());
     verify(workflowSvc, never()).deleteMetadataInfoByObjectId(anyLong());
     verify(workflowSvc, never()).deleteTaskInfoByObjectId(anyLong());
 
@@ -186,7 +199,9 @@ class DmeSyncSchedulerPriorRunRetryTest {
     ReflectionTestUtils.invokeMethod(scheduler, "includePriorRunFailuresInCurrentRunWorklist");
 
     verify(sender, never()).send(any(DmeSyncMessageDto.class), anyString());
+    verify(sender, never()).send(anyList(), anyString());
     verify(workflowSvc, never()).saveStatusInfo(any());
+    verify(workflowSvc, never()).resetStatusInfoForReattempt(anyList(), anyString());
 
     // cleanup
     java.nio.file.Files.deleteIfExists(Path.of(failedOutside.getOriginalFilePath()));
@@ -225,7 +240,9 @@ class DmeSyncSchedulerPriorRunRetryTest {
     ReflectionTestUtils.invokeMethod(scheduler, "includePriorRunFailuresInCurrentRunWorklist");
 
     verify(sender, never()).send(any(DmeSyncMessageDto.class), anyString());
+    verify(sender, never()).send(anyList(), anyString());
     verify(workflowSvc, never()).saveStatusInfo(any());
+    verify(workflowSvc, never()).resetStatusInfoForReattempt(anyList(), anyString());
     verify(workflowSvc, never()).deleteMetadataInfoByObjectId(anyLong());
     verify(workflowSvc, never()).deleteTaskInfoByObjectId(anyLong());
 
@@ -276,22 +293,21 @@ class DmeSyncSchedulerPriorRunRetryTest {
     when(workflowSvc.findStatusInfoByRunIdAndDoc("Run_20260225010101", "DOC1"))
         .thenReturn(List.of(failedExisting));
 
-    when(workflowSvc.saveStatusInfo(any(StatusInfo.class))).thenAnswer(inv -> inv.getArgument(0));
-
     // Act
     ReflectionTestUtils.invokeMethod(scheduler, "includePriorRunFailuresInCurrentRunWorklist");
 
-    // Assert
-    verify(workflowSvc, times(1)).saveStatusInfo(argThat(s ->
-        "Run_20260325010101".equals(s.getRunId())
-            && "".equals(s.getError())
-            && Long.valueOf(0L).equals(s.getRetryCount())
-            && Boolean.FALSE.equals(s.isEndWorkflow())
-            && existing.toString().equals(s.getOriginalFilePath())
-    ));
-
-    verify(workflowSvc, times(1)).deleteMetadataInfoByObjectId(4L);
-    verify(sender, times(1)).send(any(DmeSyncMessageDto.class), eq("inbound.queue"));
+    // Assert: the row and its metadata are reset with set based statements
+    verify(workflowSvc, times(1)).resetStatusInfoForReattempt(List.of(4L), "Run_20260325010101");
+    verify(workflowSvc, never()).saveStatusInfo(any());
+    verify(workflowSvc, never()).deleteMetadataInfoByObjectId(anyLong());
+    // and the loaded row is kept in step
+    assertEquals("Run_20260325010101", failedExisting.getRunId());
+    assertEquals("", failedExisting.getError());
+    assertEquals(Long.valueOf(0L), failedExisting.getRetryCount());
+    assertEquals(Boolean.FALSE, failedExisting.isEndWorkflow());
+
+    verify(sender, times(1)).send(argThat((List<DmeSyncMessageDto> messages) ->
+        messages.size() == 1 && Long.valueOf(4L).equals(messages.get(0).getObjectId())), eq("inbound.queue"));
 
     java.nio.file.Files.deleteIfExists(existing);
     java.nio.file.Files.deleteIfExists(baseDir);
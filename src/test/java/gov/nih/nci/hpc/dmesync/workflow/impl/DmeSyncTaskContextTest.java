@@ -0,0 +1,102 @@
+package gov.nih.nci.hpc.dmesync.workflow.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import gov.nih.nci.hpc.dmesync.DmeSyncWorkflowServiceFactory;
+import gov.nih.nci.hpc.dmesync.domain.StatusInfo;
+import gov.nih.nci.hpc.dmesync.domain.TaskInfo;
+import gov.nih.nci.hpc.dmesync.service.DmeSyncWorkflowService;
+
+class DmeSyncTaskContextTest {
+
+  private final DmeSyncWorkflowService service = Mockito.mock(DmeSyncWorkflowService.class);
+  private final AtomicInteger processed = new AtomicInteger();
+
+  private AbstractDmeSyncTask newTask(String taskName) {
+    AbstractDmeSyncTask task =
+        new AbstractDmeSyncTask() {
+          @Override
+          protected StatusInfo process(StatusInfo object) {
+            processed.incrementAndGet();
+            return object;
+          }
+        };
+    DmeSyncWorkflowServiceFactory factory = Mockito.mock(DmeSyncWorkflowServiceFactory.class);
+    when(factory.getService(any())).thenReturn(service);
+    ReflectionTestUtils.setField(task, "dmeSyncWorkflowService", factory);
+    ReflectionTestUtils.setField(task, "access", "local");
+    task.setTaskName(taskName);
+    return task;
+  }
+
+  @AfterEach
+  void closeContext() {
+    DmeSyncTaskContext.close();
+  }
+
+  @Test
+  void tasksUseTheRowsLoadedWhenTheWorkflowStarted() throws Exception {
+    StatusInfo object = new StatusInfo();
+    object.setId(7L);
+    TaskInfo done = new TaskInfo();
+    done.setObjectId(7L);
+    done.setTaskName("UploadTask");
+    done.setCompleted(true);
+    DmeSyncTaskContext.open(7L, List.of(done));
+
+    newTask("UploadTask").processTask(object);
+    AbstractDmeSyncTask verifyTask = newTask("VerifyTask");
+    verifyTask.processTask(object);
+    // Recorded in the context, so it is not run again.
+    verifyTask.processTask(object);
+
+    assertEquals(1, processed.get());
+    verify(service, never()).findFirstTaskInfoByObjectIdAndTaskName(anyLong(), anyString());
+    verify(service, times(1)).saveTaskInfo(any(TaskInfo.class));
+  }
+
+  @Test
+  void deletedRowsStartTheTasksOver() throws Exception {
+    StatusInfo object = new StatusInfo();
+    object.setId(7L);
+    TaskInfo done = new TaskInfo();
+    done.setObjectId(7L);
+    done.setTaskName("UploadTask");
+    done.setCompleted(true);
+    DmeSyncTaskContext.open(7L, List.of(done));
+
+    AbstractDmeSyncTask uploadTask = newTask("UploadTask");
+    uploadTask.deleteTasks(7L);
+    uploadTask.processTask(object);
+
+    assertEquals(1, processed.get());
+    verify(service).deleteTaskInfoByObjectId(7L);
+  }
+
+  @Test
+  void withoutAWorkflowTheRowsAreQueried() throws Exception {
+    StatusInfo object = new StatusInfo();
+    object.setId(8L);
+    DmeSyncTaskContext.open(7L, List.of());
+
+    newTask("VerifyTask").processTask(object);
+
+    assertEquals(1, processed.get());
+    verify(service, times(2)).findFirstTaskInfoByObjectIdAndTaskName(8L, "VerifyTask");
+  }
+}